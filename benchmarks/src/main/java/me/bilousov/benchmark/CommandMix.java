@@ -0,0 +1,31 @@
+package me.bilousov.benchmark;
+
+// relative weights of the command kinds the generator emits
+public enum CommandMix {
+
+    MIXED(30, 20, 25, 10, 10, 5),
+    ARITHMETIC(30, 5, 55, 5, 3, 2),
+    MEMORY(45, 40, 10, 2, 2, 1),
+    BRANCHES(25, 10, 20, 5, 35, 5),
+    CALLS(30, 10, 15, 5, 5, 35);
+
+    private final int push;
+    private final int pop;
+    private final int binary;
+    private final int unary;
+    private final int branch;
+    private final int call;
+
+    CommandMix(int push, int pop, int binary, int unary, int branch, int call) {
+        this.push = push;
+        this.pop = pop;
+        this.binary = binary;
+        this.unary = unary;
+        this.branch = branch;
+        this.call = call;
+    }
+
+    int[] getWeights(){
+        return new int[]{push, pop, binary, unary, branch, call};
+    }
+}
@@ -0,0 +1,52 @@
+package me.bilousov.benchmark;
+
+import me.bilousov.Main;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+// Main's own translation with default options, the console summary goes nowhere. The thread count only
+// changes how the files are scheduled, the output is the same for all of them
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class EndToEndBenchmark {
+
+    @Param({"1", "4"})
+    public int threads;
+
+    private final PrintStream summary = new PrintStream(OutputStream.nullOutputStream());
+    private long outputBytes;
+
+    @Benchmark
+    public long translateProgram(GeneratedProgram program) throws IOException {
+        Path outputPath = Main.translate(new String[]{"--threads=" + threads, program.getPath()}, summary);
+        outputBytes = Files.size(outputPath);
+
+        return outputBytes;
+    }
+
+    @TearDown(Level.Trial)
+    public void report(GeneratedProgram program){
+        program.report("end to end", outputBytes);
+    }
+}
@@ -0,0 +1,69 @@
+package me.bilousov.benchmark;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+// one synthetic program per trial, pass -p instructions=10000000 for the largest size
+@State(Scope.Benchmark)
+public class GeneratedProgram {
+
+    private static final long SEED = 0x5EED;
+
+    @Param({"10000", "100000", "1000000"})
+    public int instructions;
+
+    @Param({"MIXED", "ARITHMETIC", "CALLS"})
+    public CommandMix mix;
+
+    private Path directory;
+    private int instructionCount;
+
+    @Setup(Level.Trial)
+    public void generate() throws IOException {
+        directory = Files.createTempDirectory("vm-benchmark");
+        VMProgramGenerator generator = new VMProgramGenerator(mix, SEED);
+        generator.generate(directory.resolve("Program"), instructions);
+        instructionCount = generator.getInstructionCount();
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)){
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator){
+                Files.delete(path);
+            }
+        }
+    }
+
+    public String getPath(){
+        return directory.resolve("Program").toString();
+    }
+
+    public File[] getFiles(){
+        File[] files = directory.resolve("Program").toFile().listFiles((dir, name) -> name.endsWith(".vm"));
+        Arrays.sort(files);
+        return files;
+    }
+
+    public int getInstructionCount(){
+        return instructionCount;
+    }
+
+    // per instruction figures are printed once per trial, JMH itself only reports per operation numbers
+    public void report(String stage, long outputBytes){
+        System.out.printf("%n%s: %d VM instructions, %d output bytes, %.2f bytes per VM instruction%n",
+                stage, instructionCount, outputBytes, (double) outputBytes / instructionCount);
+    }
+}
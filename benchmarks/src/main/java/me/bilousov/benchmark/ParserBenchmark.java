@@ -0,0 +1,63 @@
+package me.bilousov.benchmark;
+
+import me.bilousov.instruction.SymbolTable;
+import me.bilousov.parser.VMFileReader;
+import me.bilousov.parser.VMInstructionParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ParserBenchmark {
+
+    private final List<String> lines = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void readLines(GeneratedProgram program) throws IOException {
+        for (File file : program.getFiles()){
+            lines.addAll(Files.readAllLines(file.toPath()));
+        }
+    }
+
+    // tokenizing and interning only, the lines are already in memory
+    @Benchmark
+    public void parseLines(Blackhole blackhole){
+        VMInstructionParser parser = new VMInstructionParser(new SymbolTable());
+
+        for (String line : lines){
+            blackhole.consume(parser.parse(line));
+        }
+    }
+
+    // the whole read path of VMCodeParser, channel reads included
+    @Benchmark
+    public void readFiles(GeneratedProgram program, Blackhole blackhole) throws IOException {
+        VMInstructionParser parser = new VMInstructionParser(new SymbolTable());
+        VMFileReader reader = new VMFileReader();
+
+        for (File file : program.getFiles()){
+            reader.read(file, parser, blackhole::consume);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package me.bilousov.benchmark;
+
+import me.bilousov.instruction.SymbolTable;
+import me.bilousov.instruction.VMInstruction;
+import me.bilousov.parser.VMFileReader;
+import me.bilousov.parser.VMInstructionParser;
+import me.bilousov.translator.AssemblyBuffer;
+import me.bilousov.translator.CodeTranslator;
+import me.bilousov.translator.TranslatorOptions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TranslatorBenchmark {
+
+    @Param({"false", "true"})
+    public boolean compact;
+
+    private final SymbolTable symbolTable = new SymbolTable();
+    private final List<String> fileNames = new ArrayList<>();
+    private final List<List<VMInstruction>> instructions = new ArrayList<>();
+    private final AssemblyBuffer buffer = new AssemblyBuffer();
+    private TranslatorOptions options;
+    private long outputBytes;
+
+    @Setup(Level.Trial)
+    public void parse(GeneratedProgram program) throws IOException {
+        VMInstructionParser parser = new VMInstructionParser(symbolTable);
+        VMFileReader reader = new VMFileReader();
+
+        for (File file : program.getFiles()){
+            List<VMInstruction> fileInstructions = new ArrayList<>();
+            reader.read(file, parser, fileInstructions::add);
+            fileNames.add(file.getName().replace(".vm", ""));
+            instructions.add(fileInstructions);
+        }
+
+        options = TranslatorOptions.DEFAULT.withCompactCode(compact);
+    }
+
+    // code generation only, every instruction is rendered into the same reusable buffer
+    @Benchmark
+    public long translate(){
+        CodeTranslator translator = new CodeTranslator(symbolTable, true, options);
+        long chars = 0;
+
+        buffer.clear();
+        translator.translateBootstrapCode(buffer);
+        chars += buffer.length();
+
+        for (int i = 0; i < instructions.size(); i++){
+            String fileName = fileNames.get(i);
+
+            for (VMInstruction instruction : instructions.get(i)){
+                buffer.clear();
+                translator.translateInstruction(instruction, fileName, buffer);
+                chars += buffer.length();
+            }
+        }
+
+        outputBytes = chars;
+        return chars;
+    }
+
+    @TearDown(Level.Trial)
+    public void report(GeneratedProgram program){
+        program.report(compact ? "translate compact" : "translate", outputBytes);
+    }
+}
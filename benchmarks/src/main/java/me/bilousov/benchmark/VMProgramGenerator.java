@@ -0,0 +1,194 @@
+package me.bilousov.benchmark;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Random;
+
+// writes a deterministic, well formed multi file VM program with Sys.init as its entry point
+public class VMProgramGenerator {
+
+    private static final int INSTRUCTIONS_PER_FILE = 5_000;
+    private static final int INSTRUCTIONS_PER_FUNCTION = 60;
+    private static final int MAX_LOCALS = 4;
+    private static final String[] BINARY_COMMANDS = {"add", "sub", "and", "or", "eq", "gt", "lt"};
+    private static final String[] UNARY_COMMANDS = {"neg", "not"};
+    private static final String[] INDEXED_SEGMENTS = {"argument", "this", "that", "static", "temp", "pointer"};
+
+    private final Random random;
+    private final int[] weights;
+    private final int totalWeight;
+
+    private int instructionCount;
+    private int labelId;
+
+    public VMProgramGenerator(CommandMix mix, long seed) {
+        random = new Random(seed);
+        weights = mix.getWeights();
+
+        int total = 0;
+        for (int weight : weights){
+            total += weight;
+        }
+        totalWeight = total;
+    }
+
+    public int getInstructionCount(){
+        return instructionCount;
+    }
+
+    public void generate(Path directory, int instructions) throws IOException {
+        Files.createDirectories(directory);
+        instructionCount = 0;
+
+        int functionsPerFile = INSTRUCTIONS_PER_FILE / INSTRUCTIONS_PER_FUNCTION;
+        int functionCount = Math.max(1, instructions / INSTRUCTIONS_PER_FUNCTION);
+        int fileCount = (functionCount + functionsPerFile - 1) / functionsPerFile;
+
+        try (BufferedWriter writer = Files.newBufferedWriter(directory.resolve("Sys.vm"), StandardCharsets.US_ASCII)){
+            line(writer, "function Sys.init 0");
+            line(writer, "call Gen0.f0 0");
+            line(writer, "pop temp 0");
+            line(writer, "label END");
+            line(writer, "goto END");
+        }
+
+        for (int file = 0; file < fileCount; file++){
+            try (BufferedWriter writer = Files.newBufferedWriter(directory.resolve("Gen" + file + ".vm"), StandardCharsets.US_ASCII)){
+                for (int function = file * functionsPerFile; function < Math.min(functionCount, (file + 1) * functionsPerFile); function++){
+                    writeFunction(writer, function, functionsPerFile, functionCount);
+                }
+            }
+        }
+    }
+
+    private void writeFunction(BufferedWriter writer, int function, int functionsPerFile, int functionCount) throws IOException {
+        int start = instructionCount;
+        int locals = random.nextInt(MAX_LOCALS + 1);
+        int depth = 0;
+        Deque<String> openLabels = new ArrayDeque<>();
+
+        line(writer, "function " + functionName(function, functionsPerFile) + " " + locals);
+
+        // leave room for closing the labels and the return sequence
+        while (instructionCount - start < INSTRUCTIONS_PER_FUNCTION - openLabels.size() - 3){
+            switch (pick()){
+                case 0 -> {
+                    writePush(writer, locals);
+                    depth++;
+                }
+                case 1 -> {
+                    if (depth == 0){
+                        writePush(writer, locals);
+                        depth++;
+                    }
+                    writePop(writer, locals);
+                    depth--;
+                }
+                case 2 -> {
+                    while (depth < 2){
+                        writePush(writer, locals);
+                        depth++;
+                    }
+                    line(writer, BINARY_COMMANDS[random.nextInt(BINARY_COMMANDS.length)]);
+                    depth--;
+                }
+                case 3 -> {
+                    if (depth == 0){
+                        writePush(writer, locals);
+                        depth++;
+                    }
+                    line(writer, UNARY_COMMANDS[random.nextInt(UNARY_COMMANDS.length)]);
+                }
+                case 4 -> {
+                    // only forward jumps, so the generated program always terminates
+                    if (!openLabels.isEmpty() && random.nextBoolean()){
+                        line(writer, "label " + openLabels.pop());
+                    } else {
+                        String label = "L" + labelId++;
+                        if (depth > 0 && random.nextBoolean()){
+                            line(writer, "if-goto " + label);
+                            depth--;
+                        } else {
+                            line(writer, "goto " + label);
+                        }
+                        openLabels.push(label);
+                    }
+                }
+                default -> {
+                    // calls only go to later functions, so there is no recursion either
+                    int callee = function + 1 + random.nextInt(8);
+                    if (callee >= functionCount){
+                        writePush(writer, locals);
+                        depth++;
+                        continue;
+                    }
+                    int arguments = Math.min(depth, random.nextInt(3));
+                    line(writer, "call " + functionName(callee, functionsPerFile) + " " + arguments);
+                    depth += 1 - arguments;
+                }
+            }
+        }
+
+        while (!openLabels.isEmpty()){
+            line(writer, "label " + openLabels.pop());
+        }
+
+        line(writer, "push constant " + random.nextInt(32768));
+        line(writer, "return");
+    }
+
+    private static String functionName(int function, int functionsPerFile){
+        return "Gen" + function / functionsPerFile + ".f" + function % functionsPerFile;
+    }
+
+    private void writePush(BufferedWriter writer, int locals) throws IOException {
+        if (random.nextInt(3) == 0){
+            line(writer, "push constant " + random.nextInt(32768));
+        } else {
+            line(writer, "push " + segment(locals));
+        }
+    }
+
+    private void writePop(BufferedWriter writer, int locals) throws IOException {
+        line(writer, "pop " + segment(locals));
+    }
+
+    private String segment(int locals){
+        if (locals > 0 && random.nextInt(3) == 0){
+            return "local " + random.nextInt(locals);
+        }
+
+        String segment = INDEXED_SEGMENTS[random.nextInt(INDEXED_SEGMENTS.length)];
+
+        return switch (segment){
+            case "temp" -> segment + " " + random.nextInt(8);
+            case "pointer" -> segment + " " + random.nextInt(2);
+            case "static" -> segment + " " + random.nextInt(16);
+            default -> segment + " " + random.nextInt(4);
+        };
+    }
+
+    private int pick(){
+        int value = random.nextInt(totalWeight);
+
+        for (int i = 0; i < weights.length; i++){
+            value -= weights[i];
+            if (value < 0){
+                return i;
+            }
+        }
+
+        return weights.length - 1;
+    }
+
+    private void line(BufferedWriter writer, String command) throws IOException {
+        writer.write(command);
+        writer.newLine();
+        instructionCount++;
+    }
+}
@@ -0,0 +1,96 @@
+package me.bilousov.benchmark;
+
+import me.bilousov.instruction.SymbolTable;
+import me.bilousov.parser.VMFileReader;
+import me.bilousov.parser.VMInstructionParser;
+import me.bilousov.translator.AssemblyBuffer;
+import me.bilousov.translator.CodeTranslator;
+import me.bilousov.translator.TranslatorOptions;
+import me.bilousov.writer.AssemblyFileWriter;
+import me.bilousov.writer.ChannelFileWriter;
+import me.bilousov.writer.FileWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class WriterBenchmark {
+
+    private final List<String> chunks = new ArrayList<>();
+    private long outputBytes;
+
+    // the program is translated once, the benchmarks only pay for the file output
+    @Setup(Level.Trial)
+    public void translate(GeneratedProgram program) throws IOException {
+        SymbolTable symbolTable = new SymbolTable();
+        VMInstructionParser parser = new VMInstructionParser(symbolTable);
+        VMFileReader reader = new VMFileReader();
+        CodeTranslator translator = new CodeTranslator(symbolTable, true, TranslatorOptions.DEFAULT);
+        AssemblyBuffer buffer = new AssemblyBuffer();
+
+        chunks.add(translator.getBootstrapCode());
+
+        for (File file : program.getFiles()){
+            String fileName = file.getName().replace(".vm", "");
+
+            reader.read(file, parser, instruction -> {
+                buffer.clear();
+                translator.translateInstruction(instruction, fileName, buffer);
+                chunks.add(buffer.toString());
+            });
+        }
+    }
+
+    @Benchmark
+    public long channelWriter(GeneratedProgram program) throws IOException {
+        try (ChannelFileWriter writer = FileWriter.openChannelFile(program.getPath(), ChannelFileWriter.DEFAULT_BUFFER_SIZE,
+                System.lineSeparator())){
+            writeChunks(writer);
+            outputBytes = writer.getBytesWritten();
+        }
+
+        return outputBytes;
+    }
+
+    @Benchmark
+    public long streamingWriter(GeneratedProgram program) throws IOException {
+        try (AssemblyFileWriter writer = FileWriter.openStreamingFile(program.getPath())){
+            writeChunks(writer);
+        }
+
+        outputBytes = Files.size(FileWriter.getOutputPath(program.getPath(), ".asm"));
+        return outputBytes;
+    }
+
+    @TearDown(Level.Trial)
+    public void report(GeneratedProgram program){
+        program.report("write", outputBytes);
+    }
+
+    private void writeChunks(AssemblyFileWriter writer) throws IOException {
+        for (String chunk : chunks){
+            writer.write(chunk);
+        }
+    }
+}
@@ -1,15 +1,351 @@
 package me.bilousov;
 
+import me.bilousov.cache.TranslationCache;
+import me.bilousov.hack.HackAssembler;
+import me.bilousov.hack.HackEmulator;
+import me.bilousov.instruction.ProgramSymbolTable;
+import me.bilousov.metrics.TranslationMetrics;
+import me.bilousov.optimizer.PeepholeOptimizer;
 import me.bilousov.parser.VMCodeParser;
-import me.bilousov.translator.CodeTranslator;
+import me.bilousov.server.BatchTranslator;
+import me.bilousov.server.DirectoryWatcher;
+import me.bilousov.server.TranslationServer;
+import me.bilousov.translator.AssemblySink;
+import me.bilousov.translator.DebugMarkers;
+import me.bilousov.translator.TranslationContext;
+import me.bilousov.translator.TranslatorOptions;
+import me.bilousov.translator.VMOptimization;
+import me.bilousov.writer.AssemblyFileWriter;
+import me.bilousov.writer.ChannelFileWriter;
 import me.bilousov.writer.FileWriter;
 
 import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class Main {
 
+    private static final String THREADS_OPTION = "--threads=";
+    private static final String COMPACT_OPTION = "--compact";
+    private static final String PEEPHOLE_OPTION = "--peephole";
+    private static final String VM_OPTIMIZE_OPTION = "--optimize-vm";
+    private static final String INLINE_OPTION = "--inline";
+    private static final String INLINE_THRESHOLD_OPTION = "--inline-threshold=";
+    private static final String INLINE_BUDGET_OPTION = "--inline-budget=";
+    private static final int DEFAULT_INLINE_THRESHOLD = 8;
+    private static final int DEFAULT_INLINE_BUDGET = 2000;
+    private static final String REGISTER_STACK_TOP_OPTION = "--register-stack-top";
+    private static final String MARKERS_OPTION = "--markers=";
+    private static final String DEAD_FUNCTIONS_OPTION = "--remove-dead-functions";
+    private static final String CACHE_OPTION = "--cache=";
+    private static final String BUFFERED_WRITER_OPTION = "--buffered-writer";
+    private static final String BUFFER_SIZE_OPTION = "--buffer-size=";
+    private static final String LINE_SEPARATOR_OPTION = "--line-separator=";
+    private static final String HACK_OPTION = "--hack";
+    private static final String HACK_IMAGE_OPTION = "--hack-image";
+    private static final String METRICS_OPTION = "--metrics=";
+    private static final String VERBOSE_OPTION = "--verbose";
+    private static final String SERVER_OPTION = "--server=";
+    private static final String WATCH_OPTION = "--watch";
+    private static final String BATCH_OPTION = "--batch=";
+    private static final String BATCH_WORKERS_OPTION = "--batch-workers=";
+    private static final String SYMBOLS_OPTION = "--symbols";
+    private static final String EMULATE_OPTION = "--emulate";
+    private static final long DEFAULT_EMULATION_CYCLES = 1_000_000_000L;
+    private static final int PROFILE_LINES = 10;
+
+    private static final Map<String, VMCodeParser> PARSERS = new ConcurrentHashMap<>();
+    private static final ThreadLocal<TranslationContext> POOLED_CONTEXT = ThreadLocal.withInitial(TranslationContext::new);
+
     public static void main(String[] args) throws IOException {
-        VMCodeParser parser = new VMCodeParser();
-        FileWriter.writeBinaryFileWithLines(parser.parseAndTranslateVMFiles(args[0]), args[0]);
+        List<String> translationArgs = new ArrayList<>();
+        List<String> programs = new ArrayList<>();
+        Integer serverPort = null;
+        boolean watch = false;
+        String manifest = null;
+        int batchWorkers = Runtime.getRuntime().availableProcessors();
+
+        for (String arg : args) {
+            if (arg.startsWith(SERVER_OPTION)) {
+                serverPort = Integer.parseInt(arg.substring(SERVER_OPTION.length()));
+            } else if (arg.equals(WATCH_OPTION)) {
+                watch = true;
+            } else if (arg.startsWith(BATCH_OPTION)) {
+                manifest = arg.substring(BATCH_OPTION.length());
+            } else if (arg.startsWith(BATCH_WORKERS_OPTION)) {
+                batchWorkers = Integer.parseInt(arg.substring(BATCH_WORKERS_OPTION.length()));
+            } else {
+                translationArgs.add(arg);
+
+                if (!arg.startsWith("--")) {
+                    programs.add(arg);
+                }
+            }
+        }
+
+        String[] remainingArgs = translationArgs.toArray(new String[0]);
+
+        // a manifest or more than one program path translates every program with the same options
+        if (manifest != null || programs.size() > 1) {
+            if (manifest != null) {
+                programs.addAll(BatchTranslator.readManifest(Path.of(manifest)));
+            }
+
+            translationArgs.removeIf(arg -> !arg.startsWith("--"));
+            int failed = new BatchTranslator(programs, translationArgs.toArray(new String[0]), batchWorkers, Main::translate)
+                    .run(System.out);
+
+            if (failed > 0) {
+                System.exit(1);
+            }
+        } else if (serverPort != null) {
+            new TranslationServer(serverPort, Main::translate).run();
+        } else if (watch) {
+            new DirectoryWatcher(remainingArgs, Main::translate).run();
+        } else {
+            translate(remainingArgs, System.out);
+        }
+    }
+
+    // translate(...) keeps no state in the parser, so one parser is shared by every translation with the same settings
+    private static VMCodeParser getParser(TranslatorOptions options, String cacheDirectory) throws IOException {
+        String key = options + "|" + cacheDirectory;
+        VMCodeParser parser = PARSERS.get(key);
+
+        if (parser == null) {
+            TranslationCache cache = cacheDirectory == null ? null : new TranslationCache(Path.of(cacheDirectory), options.toString());
+            parser = PARSERS.computeIfAbsent(key, k -> new VMCodeParser(options, cache));
+        }
+
+        return parser;
+    }
+
+    // comma separated names, e.g. constant-folding,negated-jumps
+    private static Set<VMOptimization> parseVMOptimizations(String names){
+        Set<VMOptimization> optimizations = EnumSet.noneOf(VMOptimization.class);
+
+        for (String name : names.split(",")) {
+            optimizations.add(VMOptimization.fromName(name.trim()));
+        }
+
+        return optimizations;
+    }
+
+    // one full translation, the server and the watcher call this again and again in the same warm JVM
+    public static Path translate(String[] args, PrintStream out) throws IOException {
+        TranslatorOptions options = TranslatorOptions.DEFAULT;
+        String path = null;
+        int threads = 1;
+        boolean peephole = false;
+        String cacheDirectory = null;
+        boolean bufferedWriter = false;
+        int bufferSize = ChannelFileWriter.DEFAULT_BUFFER_SIZE;
+        String lineSeparator = System.lineSeparator();
+        boolean hackOutput = false;
+        boolean hackImage = false;
+        String metricsReport = null;
+        boolean verbose = false;
+        int inlineThreshold = 0;
+        int inlineBudget = DEFAULT_INLINE_BUDGET;
+        long emulationCycles = 0;
+
+        for (String arg : args) {
+            if (arg.equals(COMPACT_OPTION)) {
+                options = options.withCompactCode(true);
+            } else if (arg.equals(REGISTER_STACK_TOP_OPTION)) {
+                options = options.withRegisterStackTop(true);
+            } else if (arg.equals(PEEPHOLE_OPTION)) {
+                peephole = true;
+            } else if (arg.equals(DEAD_FUNCTIONS_OPTION)) {
+                options = options.withDeadFunctionElimination(true);
+            } else if (arg.equals(HACK_OPTION)) {
+                hackOutput = true;
+            } else if (arg.equals(HACK_IMAGE_OPTION)) {
+                hackOutput = true;
+                hackImage = true;
+            } else if (arg.equals(BUFFERED_WRITER_OPTION)) {
+                bufferedWriter = true;
+            } else if (arg.startsWith(BUFFER_SIZE_OPTION)) {
+                bufferSize = Integer.parseInt(arg.substring(BUFFER_SIZE_OPTION.length()));
+            } else if (arg.startsWith(LINE_SEPARATOR_OPTION)) {
+                lineSeparator = arg.substring(LINE_SEPARATOR_OPTION.length()).equalsIgnoreCase("crlf") ? "\r\n" : "\n";
+            } else if (arg.startsWith(METRICS_OPTION)) {
+                metricsReport = arg.substring(METRICS_OPTION.length());
+            } else if (arg.equals(VERBOSE_OPTION)) {
+                verbose = true;
+            } else if (arg.startsWith(CACHE_OPTION)) {
+                cacheDirectory = arg.substring(CACHE_OPTION.length());
+            } else if (arg.equals(INLINE_OPTION)) {
+                inlineThreshold = DEFAULT_INLINE_THRESHOLD;
+            } else if (arg.startsWith(INLINE_THRESHOLD_OPTION)) {
+                inlineThreshold = Integer.parseInt(arg.substring(INLINE_THRESHOLD_OPTION.length()));
+            } else if (arg.startsWith(INLINE_BUDGET_OPTION)) {
+                inlineBudget = Integer.parseInt(arg.substring(INLINE_BUDGET_OPTION.length()));
+            } else if (arg.equals(VM_OPTIMIZE_OPTION)) {
+                options = options.withVMOptimizations(EnumSet.allOf(VMOptimization.class));
+            } else if (arg.startsWith(VM_OPTIMIZE_OPTION + "=")) {
+                options = options.withVMOptimizations(parseVMOptimizations(arg.substring(VM_OPTIMIZE_OPTION.length() + 1)));
+            } else if (arg.startsWith(MARKERS_OPTION)) {
+                options = options.withDebugMarkers(DebugMarkers.valueOf(arg.substring(MARKERS_OPTION.length()).toUpperCase()));
+            } else if (arg.equals(SYMBOLS_OPTION)) {
+                options = options.withProgramSymbols(true);
+            } else if (arg.equals(EMULATE_OPTION)) {
+                emulationCycles = DEFAULT_EMULATION_CYCLES;
+            } else if (arg.startsWith(EMULATE_OPTION + "=")) {
+                emulationCycles = Long.parseLong(arg.substring(EMULATE_OPTION.length() + 1));
+            } else if (arg.startsWith(THREADS_OPTION)) {
+                threads = Integer.parseInt(arg.substring(THREADS_OPTION.length()));
+            } else {
+                path = arg;
+            }
+        }
+
+        if (path == null) {
+            throw new IllegalArgumentException("No .vm file or directory given");
+        }
+
+        if (inlineThreshold > 0) {
+            options = options.withInlining(inlineThreshold, inlineBudget);
+        }
+
+        VMCodeParser parser = getParser(options, cacheDirectory);
+        TranslationMetrics metrics = metricsReport == null ? null : new TranslationMetrics();
+        TranslationContext context = metrics == null ? POOLED_CONTEXT.get() : new TranslationContext(metrics);
+        context.reset();
+        PeepholeOptimizer optimizer = null;
+        HackAssembler assembler = hackOutput ? new HackAssembler() : null;
+
+        // with a hack backend the assembly never reaches a text file
+        try (AssemblyFileWriter writer = hackOutput ? null : bufferedWriter ? FileWriter.openStreamingFile(path)
+                : FileWriter.openChannelFile(path, bufferSize, lineSeparator)) {
+            AssemblySink sink = hackOutput ? assembler : writer;
+
+            if (peephole) {
+                optimizer = new PeepholeOptimizer(sink);
+                sink = optimizer;
+            }
+
+            parser.translateInParallel(path, sink, threads, context);
+
+            if (optimizer != null) {
+                optimizer.flush();
+            }
+        }
+
+        Path outputPath = FileWriter.getAssemblyOutputPath(path);
+
+        short[] machineCode = null;
+
+        if (assembler != null) {
+            machineCode = assembler.finish();
+            outputPath = FileWriter.writeHackFile(machineCode, path, hackImage);
+            out.println("Assembled " + assembler.getInstructionCount() + " instructions into " + outputPath);
+        }
+
+        if (metrics != null) {
+            metrics.bytesWritten(Files.size(outputPath));
+            metrics.writeJson(Path.of(metricsReport));
+        }
+
+        if (cacheDirectory != null) {
+            out.println("Translation cache: " + context.getCacheHitCount() + " hits, " + context.getCacheMissCount() + " misses");
+        }
+
+        if (options.getDebugMarkers() == DebugMarkers.NONE) {
+            if (verbose || metrics != null) {
+                out.println("Debug markers disabled, saved " + context.getDebugMarkerCost() + " ROM words");
+            }
+        } else {
+            out.println("Debug markers cost " + context.getDebugMarkerCost() + " ROM words");
+        }
+
+        if (options.isDeadFunctionElimination()) {
+            out.println("Dead function elimination removed " + context.getRemovedFunctionCount() + " of "
+                    + context.getFunctionCount() + " functions (" + context.getRemovedFunctionInstructionCount() + " VM commands)");
+        }
+
+        if (options.getInlineThreshold() > 0) {
+            out.println("Inlined " + context.getInlinedCallCount() + " calls, " + context.getInlinedInstructionCount()
+                    + " of " + options.getInlineBudget() + " budgeted VM commands used, removed "
+                    + context.getInlinedFunctionCount() + " functions left without calls");
+        }
+
+        if (!options.getVMOptimizations().isEmpty()) {
+            out.println("VM optimizer removed " + context.getRemovedVMCommandCount() + " VM commands");
+        }
+
+        if (options.isProgramSymbols()) {
+            printProgramSymbols(context.getProgramSymbols(), out);
+        }
+
+        if (options.isCompactCode()) {
+            out.println("Compact code saved " + context.getSavedInstructionCount() + " instructions");
+        }
+
+        if (optimizer != null) {
+            out.println("Peephole optimizer: " + optimizer.getInputInstructionCount() + " -> "
+                    + optimizer.getOutputInstructionCount() + " instructions");
+        }
+
+        if (emulationCycles > 0) {
+            if (assembler == null) {
+                assembler = new HackAssembler();
+                assembler.write(Files.readString(outputPath));
+                machineCode = assembler.finish();
+            }
+
+            emulate(machineCode, assembler.getLabels(), emulationCycles, out);
+        }
+
+        return outputPath;
+    }
+
+    // statics live in RAM 16-255, every file gets one block in translation order
+    private static void printProgramSymbols(ProgramSymbolTable symbols, PrintStream out){
+        int staticCount = symbols.getStaticCount();
+        int slots = ProgramSymbolTable.LAST_STATIC_ADDRESS - ProgramSymbolTable.FIRST_STATIC_ADDRESS + 1;
+        out.println("Program symbols: " + symbols.getFunctionCount() + " functions, " + symbols.getLabelCount()
+                + " labels, " + staticCount + " of " + slots + " static slots used");
+
+        int address = ProgramSymbolTable.FIRST_STATIC_ADDRESS;
+
+        for (Map.Entry<String, Integer> file : symbols.getStaticLayout().entrySet()) {
+            int end = address + file.getValue() - 1;
+            out.printf("  %-30s RAM %s (%d static%s)%n", file.getKey(), end == address ? address : address + "-" + end,
+                    file.getValue(), file.getValue() == 1 ? "" : "s");
+            address = end + 1;
+        }
+
+        if (symbols.isStaticOverflow()) {
+            out.println("Static variables overflow into the stack at " + (ProgramSymbolTable.LAST_STATIC_ADDRESS + 1)
+                    + " by " + (staticCount - slots) + " words");
+        }
+    }
+
+    private static void emulate(short[] machineCode, Map<String, Integer> labels, long maxCycles, PrintStream out){
+        HackEmulator emulator = new HackEmulator(machineCode);
+        emulator.run(maxCycles);
+
+        long cycles = emulator.getCycles();
+        out.println("Emulated " + cycles + " cycles, " + (emulator.isHalted() ? "halted" : "stopped at the cycle limit")
+                + ", max stack depth " + emulator.getMaxStackDepth());
+
+        int shown = 0;
+
+        for (Map.Entry<String, Long> function : emulator.getFunctionProfile(labels).entrySet()) {
+            if (shown++ == PROFILE_LINES) {
+                break;
+            }
+
+            out.printf("  %-30s %12d cycles %5.1f%%%n", function.getKey(), function.getValue(),
+                    100.0 * function.getValue() / cycles);
+        }
     }
 }
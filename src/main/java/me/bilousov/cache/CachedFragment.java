@@ -0,0 +1,52 @@
+package me.bilousov.cache;
+
+public final class CachedFragment {
+
+    private final String assembly;
+    private final long savedInstructions;
+    private final long debugMarkerCost;
+    private final int translatedFunctions;
+    private final long removedFunctions;
+    private final long removedFunctionInstructions;
+    private final long removedVMCommands;
+
+    public CachedFragment(String assembly, long savedInstructions, long debugMarkerCost, int translatedFunctions,
+                          long removedFunctions, long removedFunctionInstructions, long removedVMCommands) {
+        this.assembly = assembly;
+        this.savedInstructions = savedInstructions;
+        this.debugMarkerCost = debugMarkerCost;
+        this.translatedFunctions = translatedFunctions;
+        this.removedFunctions = removedFunctions;
+        this.removedFunctionInstructions = removedFunctionInstructions;
+        this.removedVMCommands = removedVMCommands;
+    }
+
+    // translated file in file scoped label form, without the trailing line separator
+    public String getAssembly(){
+        return assembly;
+    }
+
+    public long getSavedInstructions(){
+        return savedInstructions;
+    }
+
+    public long getDebugMarkerCost(){
+        return debugMarkerCost;
+    }
+
+    public int getTranslatedFunctions(){
+        return translatedFunctions;
+    }
+
+    public long getRemovedFunctions(){
+        return removedFunctions;
+    }
+
+    public long getRemovedFunctionInstructions(){
+        return removedFunctionInstructions;
+    }
+
+    public long getRemovedVMCommands(){
+        return removedVMCommands;
+    }
+}
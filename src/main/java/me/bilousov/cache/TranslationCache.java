@@ -0,0 +1,133 @@
+package me.bilousov.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.TreeSet;
+
+// on disk store of translated files, keyed by file name, content and everything else that affects the output
+public class TranslationCache {
+
+    private static final String FORMAT_VERSION = "6";
+    private static final int HEADER_FIELDS = 7;
+    private static final String ENTRY_EXTENSION = ".asm";
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final Path directory;
+    private final String optionsKey;
+    private final String formatVersion;
+
+    public TranslationCache(Path directory, String optionsKey) throws IOException {
+        this(directory, optionsKey, FORMAT_VERSION);
+    }
+
+    TranslationCache(Path directory, String optionsKey, String formatVersion) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.optionsKey = optionsKey;
+        this.formatVersion = formatVersion;
+    }
+
+    // programContext describes what the file's translation takes from other files, null if nothing
+    public String keyOf(File vmFile, Collection<String> reachableFunctions, String programContext) throws IOException {
+        MessageDigest digest = newDigest();
+        update(digest, formatVersion);
+        update(digest, optionsKey);
+        update(digest, vmFile.getName());
+
+        // the reachable set only changes the output when dead functions are removed
+        if (reachableFunctions != null) {
+            for (String function : new TreeSet<>(reachableFunctions)) {
+                update(digest, function);
+            }
+        }
+
+        if (programContext != null) {
+            update(digest, programContext);
+        }
+
+        digest.update(Files.readAllBytes(vmFile.toPath()));
+
+        return toHex(digest.digest());
+    }
+
+    // null when there is no entry or it can not be read back, the file is then translated and stored again
+    public CachedFragment load(String key) throws IOException {
+        Path entry = directory.resolve(key + ENTRY_EXTENSION);
+
+        if (!Files.exists(entry)) {
+            return null;
+        }
+
+        String content;
+
+        try {
+            content = Files.readString(entry, StandardCharsets.US_ASCII);
+        } catch (CharacterCodingException e) {
+            return null;
+        }
+
+        int headerEnd = content.indexOf('\n');
+        String[] counters = headerEnd < 0 ? new String[0] : content.substring(0, headerEnd).split(" ");
+
+        if (counters.length != HEADER_FIELDS) {
+            return null;
+        }
+
+        try {
+            String assembly = content.substring(headerEnd + 1);
+
+            // the length tells an entry cut short from a complete one
+            if (Integer.parseInt(counters[6]) != assembly.length()) {
+                return null;
+            }
+
+            return new CachedFragment(assembly, Long.parseLong(counters[0]), Long.parseLong(counters[1]),
+                    Integer.parseInt(counters[2]), Long.parseLong(counters[3]), Long.parseLong(counters[4]),
+                    Long.parseLong(counters[5]));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    public void store(String key, CachedFragment fragment) throws IOException {
+        String header = fragment.getSavedInstructions() + " " + fragment.getDebugMarkerCost() + " "
+                + fragment.getTranslatedFunctions() + " " + fragment.getRemovedFunctions() + " " + fragment.getRemovedFunctionInstructions() + " "
+                + fragment.getRemovedVMCommands() + " " + fragment.getAssembly().length() + "\n";
+        Path temporary = Files.createTempFile(directory, key, ".tmp");
+
+        Files.writeString(temporary, header + fragment.getAssembly(), StandardCharsets.US_ASCII);
+        Files.move(temporary, directory.resolve(key + ENTRY_EXTENSION), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static MessageDigest newDigest(){
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void update(MessageDigest digest, String value){
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+    private static String toHex(byte[] bytes){
+        char[] hex = new char[bytes.length * 2];
+
+        for (int i = 0; i < bytes.length; i++) {
+            hex[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0xF];
+            hex[2 * i + 1] = HEX_DIGITS[bytes[i] & 0xF];
+        }
+
+        return new String(hex);
+    }
+}
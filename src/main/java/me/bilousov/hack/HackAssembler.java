@@ -0,0 +1,444 @@
+package me.bilousov.hack;
+
+import me.bilousov.instruction.SymbolTable;
+import me.bilousov.translator.AssemblyBuffer;
+import me.bilousov.translator.AssemblySink;
+
+import java.nio.CharBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// assembles the translator output in process, labels and variables are resolved once the whole program was seen
+public class HackAssembler implements AssemblySink {
+
+    public static final int ROM_SIZE = 1 << 15;
+    private static final int FIRST_VARIABLE_ADDRESS = 16;
+    private static final int UNRESOLVED = -1;
+
+    private static final String[] COMPUTATIONS = {
+            "0", "1", "-1", "D", "A", "!D", "!A", "-D", "-A", "D+1", "A+1", "D-1", "A-1", "D+A", "D-A", "A-D", "D&A", "D|A",
+            "M", "!M", "-M", "M+1", "M-1", "D+M", "D-M", "M-D", "D&M", "D|M",
+            "A+D", "M+D", "A&D", "M&D", "A|D", "M|D"};
+    private static final int[] COMPUTATION_BITS = {
+            0b0101010, 0b0111111, 0b0111010, 0b0001100, 0b0110000, 0b0001101, 0b0110001, 0b0001111, 0b0110011,
+            0b0011111, 0b0110111, 0b0001110, 0b0110010, 0b0000010, 0b0010011, 0b0000111, 0b0000000, 0b0010101,
+            0b1110000, 0b1110001, 0b1110011, 0b1110111, 0b1110010, 0b1000010, 0b1010011, 0b1000111, 0b1000000,
+            0b1010101,
+            0b0000010, 0b1000010, 0b0000000, 0b1000000, 0b0010101, 0b1010101};
+    // indexed by the jump bits
+    private static final String[] JUMPS = {null, "JGT", "JEQ", "JGE", "JLT", "JNE", "JLE", "JMP"};
+    private static final String[] PREDEFINED_SYMBOLS = {
+            "SP", "LCL", "ARG", "THIS", "THAT", "R0", "R1", "R2", "R3", "R4", "R5", "R6", "R7", "R8", "R9", "R10",
+            "R11", "R12", "R13", "R14", "R15", "SCREEN", "KBD"};
+    private static final int[] PREDEFINED_ADDRESSES = {
+            0, 1, 2, 3, 4, 0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16384, 24576};
+
+    private final SymbolTable computations = new SymbolTable();
+    private final SymbolTable symbols = new SymbolTable();
+
+    private short[] rom = new short[1024];
+    private int size;
+    // symbol id referenced by every A instruction, UNRESOLVED for numeric addresses
+    private int[] references = new int[1024];
+    private int[] symbolAddresses = new int[64];
+    // symbol ids of the labels in the order they were defined
+    private int[] labels = new int[64];
+    private int labelCount;
+
+    public HackAssembler() {
+        for (String computation : COMPUTATIONS) {
+            computations.intern(computation);
+        }
+
+        Arrays.fill(symbolAddresses, UNRESOLVED);
+
+        for (int i = 0; i < PREDEFINED_SYMBOLS.length; i++) {
+            defineSymbol(symbols.intern(PREDEFINED_SYMBOLS[i]), PREDEFINED_ADDRESSES[i]);
+        }
+    }
+
+    @Override
+    public void write(String assembly){
+        assemble(assembly, assembly.length());
+    }
+
+    @Override
+    public void write(AssemblyBuffer assembly){
+        if (assembly instanceof Emitter emitter && emitter.getAssembler() == this) {
+            emitter.flushLine();
+            return;
+        }
+
+        assemble(CharBuffer.wrap(assembly.getChars()), assembly.length());
+    }
+
+    // the translation generates its commands straight into ROM words, without the text in between
+    @Override
+    public AssemblyBuffer newBuffer(){
+        return new Emitter();
+    }
+
+    public int getInstructionCount(){
+        return size;
+    }
+
+    // ROM address of every label, variables are not included
+    public Map<String, Integer> getLabels(){
+        Map<String, Integer> addresses = new LinkedHashMap<>();
+
+        for (int i = 0; i < labelCount; i++) {
+            addresses.put(symbols.nameOf(labels[i]), symbolAddresses[labels[i]]);
+        }
+
+        return addresses;
+    }
+
+    // resolves the symbolic addresses, symbols that never appear as a label become variables
+    public short[] finish(){
+        int nextVariable = FIRST_VARIABLE_ADDRESS;
+
+        for (int i = 0; i < size; i++) {
+            int symbol = references[i];
+
+            if (symbol == UNRESOLVED) {
+                continue;
+            }
+
+            if (symbol >= symbolAddresses.length || symbolAddresses[symbol] == UNRESOLVED) {
+                defineSymbol(symbol, nextVariable++);
+            }
+
+            rom[i] = (short) symbolAddresses[symbol];
+        }
+
+        return Arrays.copyOf(rom, size);
+    }
+
+    private void assemble(CharSequence assembly, int length){
+        int lineStart = 0;
+
+        while (lineStart < length) {
+            int lineEnd = lineStart;
+
+            while (lineEnd < length && assembly.charAt(lineEnd) != '\n') {
+                lineEnd++;
+            }
+
+            assembleLine(assembly, lineStart, lineEnd);
+            lineStart = lineEnd + 1;
+        }
+    }
+
+    private void assembleLine(CharSequence line, int start, int end){
+        while (start < end && isWhitespace(line.charAt(start))) {
+            start++;
+        }
+
+        for (int i = start; i < end - 1; i++) {
+            if (line.charAt(i) == '/' && line.charAt(i + 1) == '/') {
+                end = i;
+                break;
+            }
+        }
+
+        while (end > start && isWhitespace(line.charAt(end - 1))) {
+            end--;
+        }
+
+        if (start == end) {
+            return;
+        }
+
+        char first = line.charAt(start);
+
+        if (first == '(') {
+            defineLabel(symbols.intern(line, start + 1, end - 1), size, line.subSequence(start, end));
+        } else if (first == '@') {
+            assembleAddress(line, start + 1, end);
+        } else {
+            emit(assembleComputation(line, start, end), UNRESOLVED);
+        }
+    }
+
+    private void defineLabel(int label, int address, CharSequence text){
+        if (label < PREDEFINED_SYMBOLS.length) {
+            throw new IllegalArgumentException("Label redefines a predefined symbol: " + text);
+        }
+
+        if (label < symbolAddresses.length && symbolAddresses[label] != UNRESOLVED) {
+            throw new IllegalArgumentException("Label defined twice: " + text);
+        }
+
+        defineSymbol(label, address);
+
+        if (labelCount == labels.length) {
+            labels = Arrays.copyOf(labels, labelCount * 2);
+        }
+
+        labels[labelCount++] = label;
+    }
+
+    private void assembleAddress(CharSequence line, int start, int end){
+        if (Character.isDigit(line.charAt(start))) {
+            int value = 0;
+
+            for (int i = start; i < end; i++) {
+                value = value * 10 + (line.charAt(i) - '0');
+
+                if (value >= ROM_SIZE) {
+                    throw new IllegalArgumentException("Address out of range: " + line.subSequence(start, end));
+                }
+            }
+
+            emit(value, UNRESOLVED);
+        } else {
+            emit(0, symbols.intern(line, start, end));
+        }
+    }
+
+    private int assembleComputation(CharSequence line, int start, int end){
+        int dest = 0;
+        int compStart = start;
+        int compEnd = end;
+        int jump = 0;
+
+        for (int i = start; i < end; i++) {
+            char c = line.charAt(i);
+
+            if (c == '=') {
+                dest = destinationBits(line, start, i);
+                compStart = i + 1;
+            } else if (c == ';') {
+                compEnd = i;
+                jump = jumpBits(line, i + 1, end);
+                break;
+            }
+        }
+
+        int computation = computations.intern(line, compStart, compEnd);
+
+        if (computation >= COMPUTATION_BITS.length) {
+            throw new IllegalArgumentException("Unknown computation: " + line.subSequence(start, end));
+        }
+
+        return 0b111 << 13 | COMPUTATION_BITS[computation] << 6 | dest << 3 | jump;
+    }
+
+    private int destinationBits(CharSequence line, int start, int end){
+        int bits = 0;
+
+        for (int i = start; i < end; i++) {
+            bits |= switch (line.charAt(i)) {
+                case 'A' -> 0b100;
+                case 'D' -> 0b010;
+                case 'M' -> 0b001;
+                default -> throw new IllegalArgumentException("Unknown destination: " + line.subSequence(start, end));
+            };
+        }
+
+        return bits;
+    }
+
+    private int jumpBits(CharSequence line, int start, int end){
+        for (int jump = 1; jump < JUMPS.length; jump++) {
+            if (matches(line, start, end, JUMPS[jump])) {
+                return jump;
+            }
+        }
+
+        throw new IllegalArgumentException("Unknown jump: " + line.subSequence(start, end));
+    }
+
+    private static boolean matches(CharSequence line, int start, int end, String text){
+        if (end - start != text.length()) {
+            return false;
+        }
+
+        for (int i = 0; i < text.length(); i++) {
+            if (line.charAt(start + i) != text.charAt(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private void emit(int instruction, int reference){
+        if (size == ROM_SIZE) {
+            throw new IllegalStateException("Program does not fit into the " + ROM_SIZE + " word Hack ROM");
+        }
+
+        if (size == rom.length) {
+            rom = Arrays.copyOf(rom, size * 2);
+            references = Arrays.copyOf(references, size * 2);
+        }
+
+        rom[size] = (short) instruction;
+        references[size++] = reference;
+    }
+
+    private void defineSymbol(int symbol, int address){
+        if (symbol >= symbolAddresses.length) {
+            int oldLength = symbolAddresses.length;
+            symbolAddresses = Arrays.copyOf(symbolAddresses, Math.max(oldLength * 2, symbol + 1));
+            Arrays.fill(symbolAddresses, oldLength, symbolAddresses.length, UNRESOLVED);
+        }
+
+        symbolAddresses[symbol] = address;
+    }
+
+    private static boolean isWhitespace(char c){
+        return c == ' ' || c == '\t' || c == '\r';
+    }
+
+    // assembles the calls of the code generator as they are made: whole instructions, addresses and labels
+    // are encoded directly and the constant blocks of instructions are assembled once and then copied.
+    // Only lines put together from pieces, such as the labels of calls and compares, are scanned when
+    // they end. The text of the commands is never kept, toString() and getChars() see the unfinished line
+    private final class Emitter extends AssemblyBuffer {
+
+        // instruction word of every C instruction seen, without symbols they do not depend on the program
+        private final Map<String, Integer> computationCodes = new HashMap<>();
+        private final Map<String, Block> blocks = new HashMap<>();
+        private int firstInstruction = size;
+
+        @Override
+        public AssemblyBuffer append(String text){
+            if (length() == 0 && text.endsWith("\n")) {
+                emitBlock(text);
+                return this;
+            }
+
+            return super.append(text);
+        }
+
+        @Override
+        public AssemblyBuffer newLine(){
+            flushLine();
+            return this;
+        }
+
+        @Override
+        public AssemblyBuffer line(String instruction){
+            if (length() > 0 || instruction.isEmpty()) {
+                return super.line(instruction);
+            }
+
+            char first = instruction.charAt(0);
+
+            if (first == '@' || first == '(' || first == '/') {
+                assembleLine(instruction, 0, instruction.length());
+            } else {
+                Integer code = computationCodes.get(instruction);
+
+                if (code == null) {
+                    code = assembleComputation(instruction, 0, instruction.length());
+                    computationCodes.put(instruction, code);
+                }
+
+                emit(code, UNRESOLVED);
+            }
+
+            return this;
+        }
+
+        @Override
+        public AssemblyBuffer address(String symbol){
+            if (length() > 0) {
+                return super.address(symbol);
+            }
+
+            assembleAddress(symbol, 0, symbol.length());
+            return this;
+        }
+
+        @Override
+        public AssemblyBuffer address(int value){
+            if (length() > 0 || value < 0 || value >= ROM_SIZE) {
+                return super.address(value);
+            }
+
+            emit(value, UNRESOLVED);
+            return this;
+        }
+
+        @Override
+        public AssemblyBuffer label(String symbol){
+            if (length() > 0) {
+                return super.label(symbol);
+            }
+
+            defineLabel(symbols.intern(symbol), size, symbol);
+            return this;
+        }
+
+        @Override
+        public void clear(){
+            super.clear();
+            firstInstruction = size;
+        }
+
+        @Override
+        public int countInstructions(){
+            return size - firstInstruction;
+        }
+
+        private HackAssembler getAssembler(){
+            return HackAssembler.this;
+        }
+
+        private void flushLine(){
+            if (length() > 0) {
+                assemble(CharBuffer.wrap(getChars()), length());
+                super.clear();
+            }
+        }
+
+        private void emitBlock(String text){
+            Block block = blocks.get(text);
+
+            if (block == null) {
+                int blockStart = size;
+                int firstLabel = labelCount;
+                assemble(text, text.length());
+
+                int[] blockLabels = Arrays.copyOfRange(labels, firstLabel, labelCount);
+                int[] labelOffsets = new int[blockLabels.length];
+
+                for (int i = 0; i < blockLabels.length; i++) {
+                    labelOffsets[i] = symbolAddresses[blockLabels[i]] - blockStart;
+                }
+
+                blocks.put(text, new Block(Arrays.copyOfRange(rom, blockStart, size),
+                        Arrays.copyOfRange(references, blockStart, size), blockLabels, labelOffsets));
+                return;
+            }
+
+            for (int i = 0; i < block.labels.length; i++) {
+                defineLabel(block.labels[i], size + block.labelOffsets[i], symbols.nameOf(block.labels[i]));
+            }
+
+            for (int i = 0; i < block.words.length; i++) {
+                emit(block.words[i], block.references[i]);
+            }
+        }
+    }
+
+    // assembled constant block, the labels are defined relative to the first instruction of the block
+    private static final class Block {
+
+        private final short[] words;
+        private final int[] references;
+        private final int[] labels;
+        private final int[] labelOffsets;
+
+        private Block(short[] words, int[] references, int[] labels, int[] labelOffsets) {
+            this.words = words;
+            this.references = references;
+            this.labels = labels;
+            this.labelOffsets = labelOffsets;
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package me.bilousov.hack;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// runs assembled Hack machine code in process, counting how often every ROM word executes
+public class HackEmulator {
+
+    public static final int RAM_SIZE = 1 << 15;
+    private static final int SP = 0;
+    private static final int STACK_BASE = 256;
+    private static final int ADDRESS_MASK = 0x7FFF;
+    private static final int UNCONDITIONAL_JUMP = 0b111;
+    private static final int DESTINATION_BITS = 0b111000;
+    private static final int JUMP_BITS = 0b000111;
+    // longest loop without side effects that is taken for the end of the program, e.g. "label END"
+    // "goto END" becomes "(END) @END 0;JMP", with debug markers "(END) @id @END 0;JMP"
+    private static final int MAX_HALT_LOOP = 8;
+    private static final String BOOTSTRAP_NAME = "(bootstrap)";
+    private static final String SHARED_ROUTINE_PREFIX = "$$";
+
+    private final short[] rom;
+    private final short[] ram = new short[RAM_SIZE];
+    private final long[] executions;
+
+    private int pc;
+    private int a;
+    private int d;
+    private long cycles;
+    private int maxStackPointer;
+    private boolean halted;
+
+    public HackEmulator(short[] rom) {
+        this.rom = rom;
+        this.executions = new long[rom.length];
+    }
+
+    // stops once the program jumps into a loop it can never leave, reaches the end of ROM, or after maxCycles
+    public void run(long maxCycles){
+        short[] rom = this.rom;
+        short[] ram = this.ram;
+        long[] executions = this.executions;
+        int pc = this.pc;
+        int a = this.a;
+        int d = this.d;
+        int maxStackPointer = this.maxStackPointer;
+        long cycle = cycles;
+
+        while (cycle < maxCycles) {
+            if (pc >= rom.length) {
+                halted = true;
+                break;
+            }
+
+            int instruction = rom[pc];
+            executions[pc]++;
+            cycle++;
+
+            if (instruction >= 0) {
+                a = instruction;
+                pc++;
+                continue;
+            }
+
+            int result = compute(instruction >> 6 & 0x7F, a, d, ram[a & ADDRESS_MASK]);
+
+            if ((instruction & 0b001000) != 0) {
+                ram[a & ADDRESS_MASK] = (short) result;
+
+                if ((a & ADDRESS_MASK) == SP && result > maxStackPointer) {
+                    maxStackPointer = result;
+                }
+            }
+
+            int target = a;
+
+            if ((instruction & 0b100000) != 0) {
+                a = (short) result;
+            }
+
+            if ((instruction & 0b010000) != 0) {
+                d = (short) result;
+            }
+
+            if (jumps(instruction & 0b111, (short) result)) {
+                target &= ADDRESS_MASK;
+
+                if ((instruction & JUMP_BITS) == UNCONDITIONAL_JUMP && isHaltLoop(target, pc)) {
+                    halted = true;
+                    break;
+                }
+
+                pc = target;
+            } else {
+                pc++;
+            }
+        }
+
+        this.pc = pc;
+        this.a = a;
+        this.d = d;
+        this.maxStackPointer = maxStackPointer;
+        this.cycles = cycle;
+    }
+
+    // a jump back over instructions that only load A or compute without storing anything, the machine
+    // can never leave such a loop
+    private boolean isHaltLoop(int target, int jump){
+        if (target > jump || jump - target >= MAX_HALT_LOOP) {
+            return false;
+        }
+
+        for (int address = target; address <= jump; address++) {
+            int instruction = rom[address];
+
+            if (instruction < 0 && (instruction & DESTINATION_BITS) != 0) {
+                return false;
+            }
+
+            if (instruction < 0 && address < jump && (instruction & JUMP_BITS) != 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    public boolean isHalted(){
+        return halted;
+    }
+
+    public long getCycles(){
+        return cycles;
+    }
+
+    public short[] getRam(){
+        return ram;
+    }
+
+    // deepest the stack grew above its base at 256
+    public int getMaxStackDepth(){
+        return Math.max(0, maxStackPointer - STACK_BASE);
+    }
+
+    // cycles spent in the code of each function, highest first; a function owns everything from its
+    // label up to the next function label, the code before the first one is the bootstrap. The shared
+    // routines of the compact mode are listed like functions
+    public Map<String, Long> getFunctionProfile(Map<String, Integer> labels){
+        List<Map.Entry<String, Integer>> functions = new ArrayList<>();
+
+        for (Map.Entry<String, Integer> label : labels.entrySet()) {
+            if (isProfiledLabel(label.getKey())) {
+                functions.add(label);
+            }
+        }
+
+        functions.sort(Map.Entry.comparingByValue());
+
+        List<Map.Entry<String, Long>> profile = new ArrayList<>();
+        int start = 0;
+        String name = BOOTSTRAP_NAME;
+
+        for (int i = 0; i <= functions.size(); i++) {
+            int end = i < functions.size() ? functions.get(i).getValue() : executions.length;
+            long functionCycles = 0;
+
+            for (int address = start; address < end; address++) {
+                functionCycles += executions[address];
+            }
+
+            if (functionCycles > 0) {
+                profile.add(Map.entry(name, functionCycles));
+            }
+
+            if (i < functions.size()) {
+                start = end;
+                name = functions.get(i).getKey();
+            }
+        }
+
+        profile.sort(Map.Entry.<String, Long>comparingByValue().reversed());
+
+        Map<String, Long> sorted = new LinkedHashMap<>();
+
+        for (Map.Entry<String, Long> entry : profile) {
+            sorted.put(entry.getKey(), entry.getValue());
+        }
+
+        return sorted;
+    }
+
+    public void reset(){
+        Arrays.fill(ram, (short) 0);
+        Arrays.fill(executions, 0);
+        pc = 0;
+        a = 0;
+        d = 0;
+        cycles = 0;
+        maxStackPointer = 0;
+        halted = false;
+    }
+
+    // functions are named File.name and every label the translator generates for itself contains a '$',
+    // only the shared routines start with "$$"
+    private static boolean isProfiledLabel(String label){
+        return label.startsWith(SHARED_ROUTINE_PREFIX) || label.indexOf('.') > 0 && label.indexOf('$') < 0;
+    }
+
+    // the a bit and the six ALU control bits
+    private static int compute(int computation, int a, int d, int m){
+        return switch (computation) {
+            case 0b0101010 -> 0;
+            case 0b0111111 -> 1;
+            case 0b0111010 -> -1;
+            case 0b0001100 -> d;
+            case 0b0110000 -> a;
+            case 0b1110000 -> m;
+            case 0b0001101 -> ~d;
+            case 0b0110001 -> ~a;
+            case 0b1110001 -> ~m;
+            case 0b0001111 -> -d;
+            case 0b0110011 -> -a;
+            case 0b1110011 -> -m;
+            case 0b0011111 -> d + 1;
+            case 0b0110111 -> a + 1;
+            case 0b1110111 -> m + 1;
+            case 0b0001110 -> d - 1;
+            case 0b0110010 -> a - 1;
+            case 0b1110010 -> m - 1;
+            case 0b0000010 -> d + a;
+            case 0b1000010 -> d + m;
+            case 0b0010011 -> d - a;
+            case 0b1010011 -> d - m;
+            case 0b0000111 -> a - d;
+            case 0b1000111 -> m - d;
+            case 0b0000000 -> d & a;
+            case 0b1000000 -> d & m;
+            case 0b0010101 -> d | a;
+            case 0b1010101 -> d | m;
+            default -> alu(computation, d, (computation & 0b1000000) != 0 ? m : a);
+        };
+    }
+
+    // the undocumented computations run through the ALU control bits like the real chip
+    private static int alu(int computation, int x, int y){
+        if ((computation & 0b100000) != 0) {
+            x = 0;
+        }
+
+        if ((computation & 0b010000) != 0) {
+            x = ~x;
+        }
+
+        if ((computation & 0b001000) != 0) {
+            y = 0;
+        }
+
+        if ((computation & 0b000100) != 0) {
+            y = ~y;
+        }
+
+        int result = (computation & 0b000010) != 0 ? x + y : x & y;
+
+        return (computation & 0b000001) != 0 ? ~result : result;
+    }
+
+    private static boolean jumps(int jump, short result){
+        return switch (jump) {
+            case 0b000 -> false;
+            case 0b001 -> result > 0;
+            case 0b010 -> result == 0;
+            case 0b011 -> result >= 0;
+            case 0b100 -> result < 0;
+            case 0b101 -> result != 0;
+            case 0b110 -> result <= 0;
+            default -> true;
+        };
+    }
+}
@@ -0,0 +1,68 @@
+package me.bilousov.instruction;
+
+public enum Opcode {
+
+    PUSH("push"),
+    POP("pop"),
+    ADD("add"),
+    SUB("sub"),
+    NEG("neg"),
+    EQ("eq"),
+    GT("gt"),
+    LT("lt"),
+    AND("and"),
+    OR("or"),
+    NOT("not"),
+    LABEL("label"),
+    GOTO("goto"),
+    IF_GOTO("if-goto"),
+    FUNCTION("function"),
+    CALL("call"),
+    RETURN("return"),
+    // produced by the VM optimizer, never parsed. if-not-goto stands for not + if-goto, it jumps
+    // unless the condition is true (-1)
+    MOVE("move", true),
+    IF_NOT_GOTO("if-not-goto", true),
+    // produced by the inliner: discards the given number of values from the stack
+    DROP("drop", true);
+
+    private static final Opcode[] VALUES = values();
+
+    private final String mnemonic;
+    private final boolean internal;
+
+    Opcode(String mnemonic) {
+        this(mnemonic, false);
+    }
+
+    Opcode(String mnemonic, boolean internal) {
+        this.mnemonic = mnemonic;
+        this.internal = internal;
+    }
+
+    public String getMnemonic(){
+        return mnemonic;
+    }
+
+    public static Opcode fromMnemonic(CharSequence text, int start, int end){
+        int length = end - start;
+
+        for(Opcode opcode : VALUES){
+            if(!opcode.internal && opcode.mnemonic.length() == length && regionMatches(opcode.mnemonic, text, start)){
+                return opcode;
+            }
+        }
+
+        throw new IllegalArgumentException("Unknown VM command: " + text.subSequence(start, end));
+    }
+
+    static boolean regionMatches(String name, CharSequence text, int start){
+        for(int i = 0; i < name.length(); i++){
+            if(name.charAt(i) != text.charAt(start + i)){
+                return false;
+            }
+        }
+
+        return true;
+    }
+}
@@ -0,0 +1,122 @@
+package me.bilousov.instruction;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// program wide index of the functions, labels and statics, filled by the first pass over all files in
+// translation order. Labels are interned in their function scoped form, so a label id is unique across
+// the program and a jump can be checked against the labels of every file
+public class ProgramSymbolTable {
+
+    public static final int FIRST_STATIC_ADDRESS = 16;
+    public static final int LAST_STATIC_ADDRESS = 255;
+
+    private final SymbolTable symbolTable;
+    // file each function is declared in, by function id
+    private final Map<Integer, String> functionFiles = new HashMap<>();
+    private final BitSet labels = new BitSet();
+    private final BitSet jumpTargets = new BitSet();
+    // static indices used by every file, in translation order
+    private final Map<String, BitSet> statics = new LinkedHashMap<>();
+
+    private String fileName;
+    private BitSet fileStatics;
+
+    public ProgramSymbolTable(SymbolTable symbolTable) {
+        this.symbolTable = symbolTable;
+    }
+
+    public SymbolTable getSymbolTable(){
+        return symbolTable;
+    }
+
+    public void startFile(String fileName){
+        this.fileName = fileName;
+        this.fileStatics = statics.computeIfAbsent(fileName, name -> new BitSet());
+    }
+
+    public void add(VMInstruction instruction){
+        switch (instruction.getOpcode()) {
+            case FUNCTION -> {
+                String declaringFile = functionFiles.putIfAbsent(instruction.getSymbol(), fileName);
+
+                if(declaringFile != null){
+                    throw new IllegalArgumentException("Function " + symbolTable.nameOf(instruction.getSymbol())
+                            + " is declared in both " + declaringFile + " and " + fileName);
+                }
+            }
+            case LABEL -> {
+                if(labels.get(instruction.getSymbol())){
+                    throw new IllegalArgumentException("Label " + symbolTable.nameOf(instruction.getSymbol())
+                            + " is declared twice");
+                }
+
+                labels.set(instruction.getSymbol());
+            }
+            case GOTO, IF_GOTO -> jumpTargets.set(instruction.getSymbol());
+            case PUSH, POP -> {
+                if(instruction.getSegment() == Segment.STATIC){
+                    fileStatics.set(instruction.getIndex());
+                }
+            }
+        }
+    }
+
+    // every jump must target a label of the same function, or a top level label of any file
+    public void validate(){
+        BitSet undefined = (BitSet) jumpTargets.clone();
+        undefined.andNot(labels);
+
+        if(!undefined.isEmpty()){
+            throw new IllegalArgumentException("Jump to undeclared label " + symbolTable.nameOf(undefined.nextSetBit(0)));
+        }
+    }
+
+    public boolean isFunction(int symbol){
+        return functionFiles.containsKey(symbol);
+    }
+
+    public int getFunctionCount(){
+        return functionFiles.size();
+    }
+
+    public int getLabelCount(){
+        return labels.cardinality();
+    }
+
+    // null for functions that are only called, e.g. those of the OS
+    public String getDeclaringFile(int function){
+        return functionFiles.get(function);
+    }
+
+    public int getStaticCount(){
+        int count = 0;
+
+        for(BitSet fileStatics : statics.values()){
+            count += fileStatics.cardinality();
+        }
+
+        return count;
+    }
+
+    // number of statics of every file that has any, in translation order. The assembler hands out
+    // addresses from 16 in the order variables are first used, and a file's statics are only used in
+    // its own code, so every file gets one block right after the previous file's block
+    public Map<String, Integer> getStaticLayout(){
+        Map<String, Integer> layout = new LinkedHashMap<>();
+
+        for(Map.Entry<String, BitSet> fileStatics : statics.entrySet()){
+            if(!fileStatics.getValue().isEmpty()){
+                layout.put(fileStatics.getKey(), fileStatics.getValue().cardinality());
+            }
+        }
+
+        return layout;
+    }
+
+    public boolean isStaticOverflow(){
+        return FIRST_STATIC_ADDRESS + getStaticCount() - 1 > LAST_STATIC_ADDRESS;
+    }
+}
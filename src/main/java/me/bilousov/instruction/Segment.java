@@ -0,0 +1,55 @@
+package me.bilousov.instruction;
+
+public enum Segment {
+
+    CONSTANT("constant", null),
+    LOCAL("local", "@LCL"),
+    ARGUMENT("argument", "@ARG"),
+    THIS("this", "@THIS"),
+    THAT("that", "@THAT"),
+    TEMP("temp", "@5"),
+    STATIC("static", null),
+    POINTER("pointer", null),
+    // produced by the inliner, never parsed: index n addresses RAM[SP - n]
+    STACK("stack", null, true);
+
+    private static final Segment[] VALUES = values();
+
+    private final String name;
+    private final String baseAddress;
+    private final boolean internal;
+
+    Segment(String name, String baseAddress) {
+        this(name, baseAddress, false);
+    }
+
+    Segment(String name, String baseAddress, boolean internal) {
+        this.name = name;
+        this.baseAddress = baseAddress;
+        this.internal = internal;
+    }
+
+    public String getName(){
+        return name;
+    }
+
+    public String getBaseAddress(){
+        return baseAddress;
+    }
+
+    public boolean isIndirect(){
+        return baseAddress != null;
+    }
+
+    public static Segment fromName(CharSequence text, int start, int end){
+        int length = end - start;
+
+        for(Segment segment : VALUES){
+            if(!segment.internal && segment.name.length() == length && Opcode.regionMatches(segment.name, text, start)){
+                return segment;
+            }
+        }
+
+        throw new IllegalArgumentException("Unknown memory segment: " + text.subSequence(start, end));
+    }
+}
@@ -0,0 +1,106 @@
+package me.bilousov.instruction;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class SymbolTable {
+
+    public static final int NO_SYMBOL = -1;
+    private static final int INITIAL_CAPACITY = 64;
+
+    // open addressing table of symbol ids, so symbols can be looked up straight from the source text
+    private int[] slots = newSlots(INITIAL_CAPACITY);
+    private final List<String> symbols = new ArrayList<>();
+
+    public int intern(String symbol){
+        return intern(symbol, 0, symbol.length());
+    }
+
+    public int intern(CharSequence text, int start, int end){
+        int mask = slots.length - 1;
+        int slot = hash(text, start, end) & mask;
+
+        while (slots[slot] != NO_SYMBOL){
+            if(regionEquals(symbols.get(slots[slot]), text, start, end)){
+                return slots[slot];
+            }
+
+            slot = (slot + 1) & mask;
+        }
+
+        int id = symbols.size();
+        symbols.add(text.subSequence(start, end).toString());
+        slots[slot] = id;
+
+        if(symbols.size() * 2 > slots.length){
+            rehash();
+        }
+
+        return id;
+    }
+
+    public void clear(){
+        if(symbols.isEmpty()){
+            return;
+        }
+
+        symbols.clear();
+        slots = newSlots(INITIAL_CAPACITY);
+    }
+
+    public String nameOf(int id){
+        return symbols.get(id);
+    }
+
+    public int size(){
+        return symbols.size();
+    }
+
+    private void rehash(){
+        slots = newSlots(slots.length * 2);
+        int mask = slots.length - 1;
+
+        for(int id = 0; id < symbols.size(); id++){
+            String symbol = symbols.get(id);
+            int slot = hash(symbol, 0, symbol.length()) & mask;
+
+            while (slots[slot] != NO_SYMBOL){
+                slot = (slot + 1) & mask;
+            }
+
+            slots[slot] = id;
+        }
+    }
+
+    private static int hash(CharSequence text, int start, int end){
+        int hash = 0;
+
+        for(int i = start; i < end; i++){
+            hash = 31 * hash + text.charAt(i);
+        }
+
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean regionEquals(String symbol, CharSequence text, int start, int end){
+        if(symbol.length() != end - start){
+            return false;
+        }
+
+        for(int i = 0; i < symbol.length(); i++){
+            if(symbol.charAt(i) != text.charAt(start + i)){
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static int[] newSlots(int capacity){
+        int[] newSlots = new int[capacity];
+        Arrays.fill(newSlots, NO_SYMBOL);
+
+        return newSlots;
+    }
+}
@@ -0,0 +1,78 @@
+package me.bilousov.instruction;
+
+public final class VMInstruction {
+
+    private final Opcode opcode;
+    private final Segment segment;
+    private final int index;
+    private final int symbol;
+    private final Segment sourceSegment;
+    private final int sourceIndex;
+    private final String source;
+
+    public VMInstruction(Opcode opcode, Segment segment, int index, int symbol, String source) {
+        this(opcode, segment, index, symbol, null, 0, source);
+    }
+
+    // a move from the pushed operand straight to the popped one
+    public VMInstruction(Segment sourceSegment, int sourceIndex, Segment segment, int index, String source) {
+        this(Opcode.MOVE, segment, index, SymbolTable.NO_SYMBOL, sourceSegment, sourceIndex, source);
+    }
+
+    private VMInstruction(Opcode opcode, Segment segment, int index, int symbol, Segment sourceSegment, int sourceIndex,
+                          String source) {
+        this.opcode = opcode;
+        this.segment = segment;
+        this.index = index;
+        this.symbol = symbol;
+        this.sourceSegment = sourceSegment;
+        this.sourceIndex = sourceIndex;
+        this.source = source;
+    }
+
+    public Opcode getOpcode(){
+        return opcode;
+    }
+
+    // null for commands without a memory segment operand
+    public Segment getSegment(){
+        return segment;
+    }
+
+    // push/pop offset, nArgs of call or nLocals of function
+    public int getIndex(){
+        return index;
+    }
+
+    // interned label or function name, SymbolTable.NO_SYMBOL if absent
+    public int getSymbol(){
+        return symbol;
+    }
+
+    // operand read by a move, null for every other command
+    public Segment getSourceSegment(){
+        return sourceSegment;
+    }
+
+    public int getSourceIndex(){
+        return sourceIndex;
+    }
+
+    public String getSource(){
+        return source;
+    }
+
+    // the source, or for commands without a symbol the command rebuilt from its parsed form
+    public String getText(){
+        if(source != null || segment == null){
+            return source != null ? source : opcode.getMnemonic();
+        }
+
+        return opcode.getMnemonic() + ' ' + segment.getName() + ' ' + index;
+    }
+
+    @Override
+    public String toString(){
+        return source;
+    }
+}
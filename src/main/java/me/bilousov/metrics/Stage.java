@@ -0,0 +1,19 @@
+package me.bilousov.metrics;
+
+public enum Stage {
+
+    READ("read"),
+    PARSE("parse"),
+    TRANSLATE("translate"),
+    WRITE("write");
+
+    private final String name;
+
+    Stage(String name) {
+        this.name = name;
+    }
+
+    public String getName(){
+        return name;
+    }
+}
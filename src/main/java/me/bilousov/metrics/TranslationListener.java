@@ -0,0 +1,21 @@
+package me.bilousov.metrics;
+
+// called from the translation threads, implementations have to be thread safe
+public interface TranslationListener {
+
+    default void stageTimed(Stage stage, long nanos){
+    }
+
+    // asm instruction counts are indexed by Opcode ordinal
+    default void fileTranslated(String fileName, long vmInstructions, long[] asmInstructionsPerOpcode){
+    }
+
+    default void fileLoadedFromCache(String fileName, long asmInstructions){
+    }
+
+    default void bootstrapTranslated(long asmInstructions){
+    }
+
+    default void bytesWritten(long bytes){
+    }
+}
@@ -0,0 +1,80 @@
+package me.bilousov.metrics;
+
+import me.bilousov.instruction.Opcode;
+import me.bilousov.instruction.VMInstruction;
+import me.bilousov.translator.AssemblyBuffer;
+
+// per file counters, owned by the thread translating that file and handed to the listener once at the end
+public class TranslationMeter {
+
+    private final String fileName;
+    private final TranslationListener listener;
+    private final long[] asmInstructionsPerOpcode = new long[Opcode.values().length];
+    private long vmInstructions;
+    // opcode of the last translated command, the code left at the end of the file is still its work
+    private Opcode lastOpcode;
+    private long translateNanos;
+    private long writeNanos;
+    private long started;
+
+    public TranslationMeter(String fileName, TranslationListener listener) {
+        this.fileName = fileName;
+        this.listener = listener;
+    }
+
+    public void startTranslation(){
+        started = System.nanoTime();
+    }
+
+    public void endTranslation(VMInstruction instruction, AssemblyBuffer translated){
+        long now = System.nanoTime();
+        translateNanos += now - started;
+        started = now;
+        vmInstructions++;
+        lastOpcode = instruction.getOpcode();
+        asmInstructionsPerOpcode[lastOpcode.ordinal()] += translated.countInstructions();
+    }
+
+    // e.g. the register mode writing back the stack top the last command left in D
+    public void endFile(AssemblyBuffer translated){
+        if (lastOpcode != null){
+            asmInstructionsPerOpcode[lastOpcode.ordinal()] += translated.countInstructions();
+        }
+    }
+
+    public void endWrite(){
+        writeNanos += System.nanoTime() - started;
+    }
+
+    public void finish(){
+        listener.stageTimed(Stage.TRANSLATE, translateNanos);
+
+        if (writeNanos > 0){
+            listener.stageTimed(Stage.WRITE, writeNanos);
+        }
+
+        listener.fileTranslated(fileName, vmInstructions, asmInstructionsPerOpcode);
+    }
+
+    // lines that end up in ROM, labels and comments do not
+    public static int countInstructions(CharSequence assembly){
+        int count = 0;
+        boolean lineStart = true;
+
+        for (int i = 0; i < assembly.length(); i++) {
+            char c = assembly.charAt(i);
+
+            if (c == '\n') {
+                lineStart = true;
+            } else if (lineStart && c != ' ' && c != '\t' && c != '\r') {
+                lineStart = false;
+
+                if (c != '(' && c != '/') {
+                    count++;
+                }
+            }
+        }
+
+        return count;
+    }
+}
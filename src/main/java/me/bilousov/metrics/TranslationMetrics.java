@@ -0,0 +1,200 @@
+package me.bilousov.metrics;
+
+import me.bilousov.instruction.Opcode;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+// collects everything the listener reports and renders it as a JSON report,
+// stage times are summed over the worker threads and can exceed the wall time
+public class TranslationMetrics implements TranslationListener {
+
+    private static final Opcode[] OPCODES = Opcode.values();
+
+    private final long startedAt = System.nanoTime();
+    private final LongAdder[] stageNanos = newAdders(Stage.values().length);
+    private final LongAdder[] asmInstructionsPerOpcode = newAdders(OPCODES.length);
+    private final LongAdder bootstrapInstructions = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final Queue<FileMetrics> files = new ConcurrentLinkedQueue<>();
+
+    public TranslationMetrics() {
+        resetPeakHeapUsage();
+    }
+
+    @Override
+    public void stageTimed(Stage stage, long nanos){
+        stageNanos[stage.ordinal()].add(nanos);
+    }
+
+    @Override
+    public void fileTranslated(String fileName, long vmInstructions, long[] asmInstructionsPerOpcode){
+        long asmInstructions = 0;
+
+        for (int i = 0; i < asmInstructionsPerOpcode.length; i++) {
+            this.asmInstructionsPerOpcode[i].add(asmInstructionsPerOpcode[i]);
+            asmInstructions += asmInstructionsPerOpcode[i];
+        }
+
+        files.add(new FileMetrics(fileName, vmInstructions, asmInstructions, false));
+    }
+
+    @Override
+    public void fileLoadedFromCache(String fileName, long asmInstructions){
+        files.add(new FileMetrics(fileName, -1, asmInstructions, true));
+    }
+
+    @Override
+    public void bootstrapTranslated(long asmInstructions){
+        bootstrapInstructions.add(asmInstructions);
+    }
+
+    @Override
+    public void bytesWritten(long bytes){
+        bytesWritten.add(bytes);
+    }
+
+    public long getStageNanos(Stage stage){
+        return stageNanos[stage.ordinal()].sum();
+    }
+
+    public void writeJson(Path reportPath) throws IOException {
+        Files.writeString(reportPath, toJson(), StandardCharsets.UTF_8);
+    }
+
+    public String toJson(){
+        List<FileMetrics> sortedFiles = new ArrayList<>(files);
+        sortedFiles.sort(Comparator.comparing(FileMetrics::getFileName));
+
+        long vmInstructions = 0;
+        long asmInstructions = bootstrapInstructions.sum();
+
+        for (FileMetrics file : sortedFiles) {
+            vmInstructions += Math.max(file.getVmInstructions(), 0);
+            asmInstructions += file.getAsmInstructions();
+        }
+
+        StringBuilder json = new StringBuilder();
+        json.append("{\n");
+        json.append("  \"wallTimeMillis\": ").append(millis(System.nanoTime() - startedAt)).append(",\n");
+        json.append("  \"stageMillis\": {");
+
+        for (Stage stage : Stage.values()) {
+            json.append(stage.ordinal() == 0 ? "" : ",").append("\n    \"").append(stage.getName()).append("\": ")
+                    .append(millis(getStageNanos(stage)));
+        }
+
+        json.append("\n  },\n");
+        json.append("  \"vmInstructions\": ").append(vmInstructions).append(",\n");
+        json.append("  \"asmInstructions\": ").append(asmInstructions).append(",\n");
+        json.append("  \"bootstrapAsmInstructions\": ").append(bootstrapInstructions.sum()).append(",\n");
+        json.append("  \"bytesWritten\": ").append(bytesWritten.sum()).append(",\n");
+        json.append("  \"peakHeapBytes\": ").append(peakHeapBytes()).append(",\n");
+        json.append("  \"asmInstructionsPerOpcode\": {");
+
+        for (Opcode opcode : OPCODES) {
+            json.append(opcode.ordinal() == 0 ? "" : ",").append("\n    \"").append(opcode.getMnemonic()).append("\": ")
+                    .append(asmInstructionsPerOpcode[opcode.ordinal()].sum());
+        }
+
+        json.append("\n  },\n");
+        json.append("  \"files\": [");
+
+        for (int i = 0; i < sortedFiles.size(); i++) {
+            FileMetrics file = sortedFiles.get(i);
+            json.append(i == 0 ? "" : ",").append("\n    {\"name\": \"").append(escape(file.getFileName()))
+                    .append("\", \"vmInstructions\": ").append(file.isCached() ? "null" : file.getVmInstructions())
+                    .append(", \"asmInstructions\": ").append(file.getAsmInstructions())
+                    .append(", \"cached\": ").append(file.isCached()).append('}');
+        }
+
+        json.append(sortedFiles.isEmpty() ? "]\n" : "\n  ]\n");
+        json.append("}\n");
+
+        return json.toString();
+    }
+
+    // the pools are process wide: a server translating several programs at once reports the peak of all of
+    // them since the last of these translations started
+    private static void resetPeakHeapUsage(){
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    // sum of the peaks of the heap pools since this translation started
+    private static long peakHeapBytes(){
+        long peak = 0;
+
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+
+        return peak;
+    }
+
+    private static String millis(long nanos){
+        return String.format(Locale.ROOT, "%.3f", nanos / 1_000_000.0);
+    }
+
+    private static String escape(String text){
+        return text.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    private static LongAdder[] newAdders(int count){
+        LongAdder[] adders = new LongAdder[count];
+
+        for (int i = 0; i < count; i++) {
+            adders[i] = new LongAdder();
+        }
+
+        return adders;
+    }
+
+    private static final class FileMetrics {
+
+        private final String fileName;
+        private final long vmInstructions;
+        private final long asmInstructions;
+        private final boolean cached;
+
+        private FileMetrics(String fileName, long vmInstructions, long asmInstructions, boolean cached) {
+            this.fileName = fileName;
+            this.vmInstructions = vmInstructions;
+            this.asmInstructions = asmInstructions;
+            this.cached = cached;
+        }
+
+        private String getFileName(){
+            return fileName;
+        }
+
+        private long getVmInstructions(){
+            return vmInstructions;
+        }
+
+        private long getAsmInstructions(){
+            return asmInstructions;
+        }
+
+        private boolean isCached(){
+            return cached;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package me.bilousov.optimizer;
+
+import me.bilousov.instruction.Opcode;
+import me.bilousov.instruction.SymbolTable;
+import me.bilousov.instruction.VMInstruction;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+public class CallGraph {
+
+    private final SymbolTable symbolTable;
+    private final Map<String, Set<String>> callees = new LinkedHashMap<>();
+    // calls outside of any function are always translated, so their targets are roots as well
+    private final Set<String> topLevelCallees = new HashSet<>();
+    private String currentFunction;
+
+    public CallGraph(SymbolTable symbolTable) {
+        this.symbolTable = symbolTable;
+    }
+
+    public void add(VMInstruction instruction){
+        if(instruction.getOpcode() == Opcode.FUNCTION){
+            currentFunction = symbolTable.nameOf(instruction.getSymbol());
+            callees.computeIfAbsent(currentFunction, name -> new HashSet<>());
+        } else if(instruction.getOpcode() == Opcode.CALL){
+            String callee = symbolTable.nameOf(instruction.getSymbol());
+
+            if(currentFunction == null){
+                topLevelCallees.add(callee);
+            } else {
+                callees.get(currentFunction).add(callee);
+            }
+        }
+    }
+
+    // commands before the first function of a file do not belong to the previous file's function
+    public void endFile(){
+        currentFunction = null;
+    }
+
+    public int getFunctionCount(){
+        return callees.size();
+    }
+
+    public Set<String> getFunctions(){
+        return callees.keySet();
+    }
+
+    public boolean isDefined(String function){
+        return callees.containsKey(function);
+    }
+
+    public Set<String> reachableFrom(String root){
+        Set<String> reachable = new HashSet<>();
+        Deque<String> pending = new ArrayDeque<>();
+        pending.push(root);
+        pending.addAll(topLevelCallees);
+
+        while (!pending.isEmpty()){
+            String function = pending.pop();
+
+            if(reachable.add(function)){
+                pending.addAll(callees.getOrDefault(function, Set.of()));
+            }
+        }
+
+        return reachable;
+    }
+}
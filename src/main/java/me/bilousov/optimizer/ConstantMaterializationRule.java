@@ -0,0 +1,45 @@
+package me.bilousov.optimizer;
+
+// uses the constants of the Hack ALU instead of loading 0 and 1 through the A register
+public class ConstantMaterializationRule implements PeepholeRule {
+
+    @Override
+    public boolean apply(InstructionWindow window){
+        // @0, D=A, @X -> D=0, @X
+        if(window.isAddress(0) && window.matches(1, "D=A") && isAluConstant(window, 2, "@")){
+            window.replace(2, "D=" + window.get(2).substring(1));
+            window.remove(1);
+            return true;
+        }
+
+        // D=0, @X, D=D+M -> @X, D=M
+        if(window.matches(0, "D=D+M") && window.isAddress(1) && window.matches(2, "D=0")){
+            window.replace(0, "D=M");
+            window.remove(2);
+            return true;
+        }
+
+        // D=c, @SP, A=M, M=D, @SP, M=M+1 -> @SP, A=M, M=c, @SP, M=M+1, D is dead after a push
+        if(window.matches(0, "M=M+1") && window.matches(1, "@SP") && window.matches(2, "M=D")
+                && window.matches(3, "A=M") && window.matches(4, "@SP") && isAluConstant(window, 5, "D=")){
+            window.replace(2, "M=" + window.get(5).substring(2));
+            window.remove(5);
+            return true;
+        }
+
+        return false;
+    }
+
+    private boolean isAluConstant(InstructionWindow window, int fromEnd, String prefix){
+        if(fromEnd >= window.size()){
+            return false;
+        }
+
+        String instruction = window.get(fromEnd);
+
+        return instruction.startsWith(prefix) && switch (instruction.substring(prefix.length())) {
+            case "0", "1", "-1" -> true;
+            default -> false;
+        };
+    }
+}
@@ -0,0 +1,54 @@
+package me.bilousov.optimizer;
+
+import me.bilousov.instruction.Opcode;
+import me.bilousov.instruction.SymbolTable;
+import me.bilousov.instruction.VMInstruction;
+
+import java.util.Set;
+
+// drops the body of every function that is not in the kept set, one instance per file. Only the
+// functions outside the reachable set are counted, the ones inlining left without calls are not dead
+public class DeadFunctionFilter {
+
+    private final Set<String> keptFunctions;
+    private final Set<String> reachableFunctions;
+    private final SymbolTable symbolTable;
+
+    private boolean skipping;
+    private boolean counting;
+    private int removedFunctions;
+    private int removedInstructions;
+
+    // reachableFunctions is null when only the functions inlining left without calls are dropped
+    public DeadFunctionFilter(Set<String> keptFunctions, Set<String> reachableFunctions, SymbolTable symbolTable) {
+        this.keptFunctions = keptFunctions;
+        this.reachableFunctions = reachableFunctions;
+        this.symbolTable = symbolTable;
+    }
+
+    public boolean keep(VMInstruction instruction){
+        if(instruction.getOpcode() == Opcode.FUNCTION){
+            String function = symbolTable.nameOf(instruction.getSymbol());
+            skipping = !keptFunctions.contains(function);
+            counting = skipping && reachableFunctions != null && !reachableFunctions.contains(function);
+
+            if(counting){
+                removedFunctions++;
+            }
+        }
+
+        if(counting){
+            removedInstructions++;
+        }
+
+        return !skipping;
+    }
+
+    public int getRemovedFunctionCount(){
+        return removedFunctions;
+    }
+
+    public int getRemovedInstructionCount(){
+        return removedInstructions;
+    }
+}
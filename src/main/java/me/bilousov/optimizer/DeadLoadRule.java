@@ -0,0 +1,15 @@
+package me.bilousov.optimizer;
+
+// an A instruction immediately overwritten by another one has no effect, debug markers are kept anyway
+public class DeadLoadRule implements PeepholeRule {
+
+    @Override
+    public boolean apply(InstructionWindow window){
+        if(window.isAddress(0) && window.isAddress(1) && !window.isCommandStart(1)){
+            window.remove(1);
+            return true;
+        }
+
+        return false;
+    }
+}
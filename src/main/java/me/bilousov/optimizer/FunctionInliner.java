@@ -0,0 +1,36 @@
+package me.bilousov.optimizer;
+
+import me.bilousov.instruction.Opcode;
+import me.bilousov.instruction.VMInstruction;
+import me.bilousov.parser.VMInstructionHandler;
+
+import java.io.IOException;
+import java.util.Map;
+
+// replaces the planned calls of one file with the body of the callee, one instance per file
+public class FunctionInliner implements VMInstructionHandler {
+
+    private final Map<Integer, InlineFunction> sites;
+    private final VMInstructionHandler next;
+
+    private int callOrdinal;
+
+    FunctionInliner(Map<Integer, InlineFunction> sites, VMInstructionHandler next) {
+        this.sites = sites;
+        this.next = next;
+    }
+
+    @Override
+    public void handle(VMInstruction instruction) throws IOException {
+        if(instruction.getOpcode() == Opcode.CALL){
+            InlineFunction function = sites.get(callOrdinal++);
+
+            if(function != null){
+                function.expand(instruction.getIndex(), next);
+                return;
+            }
+        }
+
+        next.handle(instruction);
+    }
+}
@@ -0,0 +1,204 @@
+package me.bilousov.optimizer;
+
+import me.bilousov.instruction.Opcode;
+import me.bilousov.instruction.Segment;
+import me.bilousov.instruction.SymbolTable;
+import me.bilousov.instruction.VMInstruction;
+import me.bilousov.parser.VMInstructionHandler;
+
+import java.io.IOException;
+import java.util.List;
+
+// a straight line leaf function that can replace its call. The expansion keeps the arguments where the
+// caller pushed them, pushes the zeroed locals on top and addresses both relative to SP, so LCL and ARG
+// are never switched. Pointers written by the body are saved above the locals and restored before the
+// return value replaces the arguments, like a real return would restore them.
+public final class InlineFunction {
+
+    private final String name;
+    private final String fileName;
+    private final int localCount;
+    private final List<VMInstruction> body;
+    private final int argumentCount;
+    private final boolean usesStatic;
+    private final int[] savedPointers;
+    private final int returnDepth;
+
+    private InlineFunction(String name, String fileName, int localCount, List<VMInstruction> body, int argumentCount,
+                           boolean usesStatic, int[] savedPointers, int returnDepth) {
+        this.name = name;
+        this.fileName = fileName;
+        this.localCount = localCount;
+        this.body = body;
+        this.argumentCount = argumentCount;
+        this.usesStatic = usesStatic;
+        this.savedPointers = savedPointers;
+        this.returnDepth = returnDepth;
+    }
+
+    // commands are everything after the function command, null if they are not a straight line ending in return
+    static InlineFunction of(String name, String fileName, int localCount, List<VMInstruction> commands){
+        if(commands.isEmpty() || commands.get(commands.size() - 1).getOpcode() != Opcode.RETURN){
+            return null;
+        }
+
+        List<VMInstruction> body = List.copyOf(commands.subList(0, commands.size() - 1));
+        int depth = 0;
+        int argumentCount = 0;
+        boolean usesStatic = false;
+        boolean[] pointerWritten = new boolean[2];
+
+        for(VMInstruction instruction : body){
+            Opcode opcode = instruction.getOpcode();
+            Segment segment = instruction.getSegment();
+
+            switch (opcode) {
+                case PUSH, POP -> {
+                    if(opcode == Opcode.POP && depth < 1){
+                        return null;
+                    }
+
+                    if(segment == Segment.ARGUMENT){
+                        argumentCount = Math.max(argumentCount, instruction.getIndex() + 1);
+                    } else if(segment == Segment.LOCAL && instruction.getIndex() >= localCount){
+                        return null;
+                    } else if(segment == Segment.STATIC){
+                        usesStatic = true;
+                    } else if(segment == Segment.POINTER && opcode == Opcode.POP){
+                        pointerWritten[instruction.getIndex() == 0 ? 0 : 1] = true;
+                    }
+
+                    depth += opcode == Opcode.PUSH ? 1 : -1;
+                }
+                case ADD, SUB, AND, OR, EQ, GT, LT -> {
+                    if(depth < 2){
+                        return null;
+                    }
+
+                    depth--;
+                }
+                case NEG, NOT -> {
+                    if(depth < 1){
+                        return null;
+                    }
+                }
+                default -> {
+                    // labels, jumps, calls and early returns
+                    return null;
+                }
+            }
+        }
+
+        if(depth < 1){
+            return null;
+        }
+
+        int[] savedPointers = pointerWritten[0] && pointerWritten[1] ? new int[]{0, 1}
+                : pointerWritten[0] ? new int[]{0} : pointerWritten[1] ? new int[]{1} : new int[0];
+
+        return new InlineFunction(name, fileName, localCount, body, argumentCount, usesStatic, savedPointers, depth);
+    }
+
+    public String getName(){
+        return name;
+    }
+
+    // VM commands between function and return
+    public int getBodySize(){
+        return body.size();
+    }
+
+    // statics belong to the file the function was declared in
+    boolean canInlineAt(String callerFileName, int callArguments){
+        return callArguments >= argumentCount && (!usesStatic || fileName.equals(callerFileName));
+    }
+
+    int getExpandedSize(int callArguments){
+        int frameDepth = callArguments + localCount + savedPointers.length + returnDepth;
+
+        return localCount + savedPointers.length + body.size() + 2 * savedPointers.length
+                + (frameDepth > 2 ? 2 : frameDepth == 2 ? 1 : 0);
+    }
+
+    // identifies the expansion in cache keys
+    String describe(){
+        StringBuilder description = new StringBuilder(name).append(' ').append(localCount);
+
+        for(VMInstruction instruction : body){
+            description.append('|').append(instruction.getText());
+        }
+
+        return description.toString();
+    }
+
+    void expand(int callArguments, VMInstructionHandler out) throws IOException {
+        int frame = localCount + savedPointers.length;
+
+        for(int i = 0; i < localCount; i++){
+            out.handle(command(Opcode.PUSH, Segment.CONSTANT, 0));
+        }
+
+        for(int pointer : savedPointers){
+            out.handle(command(Opcode.PUSH, Segment.POINTER, pointer));
+        }
+
+        int depth = 0;
+
+        for(VMInstruction instruction : body){
+            out.handle(remap(instruction, callArguments, frame, depth));
+            depth += stackEffect(instruction.getOpcode());
+        }
+
+        for(int i = 0; i < savedPointers.length; i++){
+            out.handle(command(Opcode.PUSH, Segment.STACK, savedPointers.length - i + depth));
+            out.handle(command(Opcode.POP, Segment.POINTER, savedPointers[i]));
+        }
+
+        // the return value goes to the slot of argument 0, everything above it is dropped
+        int frameDepth = callArguments + frame + depth;
+
+        if(frameDepth >= 2){
+            out.handle(command(Opcode.POP, Segment.STACK, frameDepth - 1));
+        }
+
+        if(frameDepth > 2){
+            out.handle(command(Opcode.DROP, null, frameDepth - 2));
+        }
+    }
+
+    // depth is the number of values the body has on the stack above the frame
+    private VMInstruction remap(VMInstruction instruction, int callArguments, int frame, int depth){
+        Segment segment = instruction.getSegment();
+        int popped = instruction.getOpcode() == Opcode.POP ? 1 : 0;
+
+        if(segment == Segment.ARGUMENT){
+            return command(instruction, callArguments + frame + depth - popped - instruction.getIndex());
+        }
+
+        if(segment == Segment.LOCAL){
+            return command(instruction, frame + depth - popped - instruction.getIndex());
+        }
+
+        return new VMInstruction(instruction.getOpcode(), segment, instruction.getIndex(), SymbolTable.NO_SYMBOL,
+                name + ": " + instruction.getText());
+    }
+
+    private VMInstruction command(VMInstruction instruction, int stackOffset){
+        return new VMInstruction(instruction.getOpcode(), Segment.STACK, stackOffset, SymbolTable.NO_SYMBOL,
+                name + ": " + instruction.getText());
+    }
+
+    private VMInstruction command(Opcode opcode, Segment segment, int index){
+        String source = opcode.getMnemonic() + (segment == null ? "" : " " + segment.getName()) + " " + index;
+
+        return new VMInstruction(opcode, segment, index, SymbolTable.NO_SYMBOL, name + ": " + source);
+    }
+
+    private static int stackEffect(Opcode opcode){
+        return switch (opcode) {
+            case PUSH -> 1;
+            case NEG, NOT -> 0;
+            default -> -1;
+        };
+    }
+}
@@ -0,0 +1,56 @@
+package me.bilousov.optimizer;
+
+import me.bilousov.parser.VMInstructionHandler;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+// the call sites chosen by InlinePlanner, numbered per file in the order the translation meets them
+public final class InlinePlan {
+
+    private final Map<String, Map<Integer, InlineFunction>> sites;
+    private final int inlinedCalls;
+    private final int addedInstructions;
+    private final Set<String> uncalledFunctions;
+
+    InlinePlan(Map<String, Map<Integer, InlineFunction>> sites, int inlinedCalls, int addedInstructions,
+               Set<String> uncalledFunctions) {
+        this.sites = sites;
+        this.inlinedCalls = inlinedCalls;
+        this.addedInstructions = addedInstructions;
+        this.uncalledFunctions = uncalledFunctions;
+    }
+
+    public int getInlinedCallCount(){
+        return inlinedCalls;
+    }
+
+    // VM commands the expansions add over the calls they replace
+    public int getAddedInstructionCount(){
+        return addedInstructions;
+    }
+
+    // functions inlined at every call site, their bodies are only needed if something else enters them
+    public Set<String> getUncalledFunctions(){
+        return uncalledFunctions;
+    }
+
+    // null when nothing in the file is inlined, the commands then go straight to the next handler
+    public FunctionInliner createInliner(String fileName, VMInstructionHandler next){
+        Map<Integer, InlineFunction> fileSites = sites.get(fileName);
+
+        return fileSites == null ? null : new FunctionInliner(fileSites, next);
+    }
+
+    // everything the translation of the file depends on besides its own content, for the cache key
+    public String describe(String fileName){
+        StringBuilder description = new StringBuilder();
+
+        for(Map.Entry<Integer, InlineFunction> site : new TreeMap<>(sites.getOrDefault(fileName, Map.of())).entrySet()){
+            description.append(site.getKey()).append('=').append(site.getValue().describe()).append('\n');
+        }
+
+        return description.toString();
+    }
+}
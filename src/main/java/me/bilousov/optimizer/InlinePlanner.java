@@ -0,0 +1,135 @@
+package me.bilousov.optimizer;
+
+import me.bilousov.instruction.Opcode;
+import me.bilousov.instruction.SymbolTable;
+import me.bilousov.instruction.VMInstruction;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// fed the whole program in the first pass, collects the inlinable functions and every call site. The plan
+// picks call sites in program order until the budget is spent, so it does not depend on the number of threads.
+public class InlinePlanner {
+
+    private final SymbolTable symbolTable;
+    private final int threshold;
+    private final int budget;
+    private final Map<String, InlineFunction> functions = new HashMap<>();
+    private final List<CallSite> callSites = new ArrayList<>();
+
+    private String fileName;
+    private String currentFunction;
+    private int currentLocals;
+    // null when the current function can not be inlined
+    private List<VMInstruction> currentCommands;
+
+    public InlinePlanner(SymbolTable symbolTable, int threshold, int budget) {
+        this.symbolTable = symbolTable;
+        this.threshold = threshold;
+        this.budget = budget;
+    }
+
+    public void startFile(String fileName){
+        this.fileName = fileName;
+    }
+
+    public void add(VMInstruction instruction){
+        Opcode opcode = instruction.getOpcode();
+
+        if(opcode == Opcode.FUNCTION){
+            endFunction();
+            currentFunction = symbolTable.nameOf(instruction.getSymbol());
+            currentLocals = instruction.getIndex();
+            currentCommands = new ArrayList<>();
+            return;
+        }
+
+        if(opcode == Opcode.CALL){
+            callSites.add(new CallSite(fileName, currentFunction, symbolTable.nameOf(instruction.getSymbol()),
+                    instruction.getIndex()));
+        }
+
+        if(currentCommands != null){
+            // the body may take threshold commands plus the return
+            if(opcode == Opcode.CALL || currentCommands.size() > threshold){
+                currentCommands = null;
+            } else {
+                currentCommands.add(instruction);
+            }
+        }
+    }
+
+    // commands before the first function of a file do not belong to the previous file's function
+    public void endFile(){
+        endFunction();
+        currentFunction = null;
+    }
+
+    // reachableFunctions is null when every function is translated
+    public InlinePlan plan(Set<String> reachableFunctions){
+        Map<String, Map<Integer, InlineFunction>> sites = new HashMap<>();
+        Map<String, Integer> callCounts = new HashMap<>();
+        // call sites of every function that are still translated as calls
+        Map<String, Integer> remainingCalls = new HashMap<>();
+        Set<String> inlinedFunctions = new HashSet<>();
+        int remaining = budget;
+        int inlinedCalls = 0;
+
+        for(CallSite site : callSites){
+            // calls in removed functions never reach the inliner and are not counted
+            if(site.caller != null && reachableFunctions != null && !reachableFunctions.contains(site.caller)){
+                continue;
+            }
+
+            int callOrdinal = callCounts.merge(site.fileName, 1, Integer::sum) - 1;
+            InlineFunction function = functions.get(site.callee);
+
+            int cost = function == null ? 0 : function.getExpandedSize(site.arguments) - 1;
+
+            if(function != null && function.canInlineAt(site.fileName, site.arguments) && cost <= remaining){
+                remaining -= cost;
+                inlinedCalls++;
+                inlinedFunctions.add(function.getName());
+                sites.computeIfAbsent(site.fileName, name -> new HashMap<>()).put(callOrdinal, function);
+            } else {
+                remainingCalls.merge(site.callee, 1, Integer::sum);
+            }
+        }
+
+        inlinedFunctions.removeAll(remainingCalls.keySet());
+
+        return new InlinePlan(sites, inlinedCalls, budget - remaining, inlinedFunctions);
+    }
+
+    private void endFunction(){
+        if(currentCommands != null){
+            InlineFunction function = InlineFunction.of(currentFunction, fileName, currentLocals, currentCommands);
+
+            if(function != null){
+                functions.put(function.getName(), function);
+            }
+        }
+
+        currentCommands = null;
+    }
+
+    private static final class CallSite {
+
+        private final String fileName;
+        // null for calls outside of any function
+        private final String caller;
+        private final String callee;
+        private final int arguments;
+
+        private CallSite(String fileName, String caller, String callee, int arguments) {
+            this.fileName = fileName;
+            this.caller = caller;
+            this.callee = callee;
+            this.arguments = arguments;
+        }
+    }
+}
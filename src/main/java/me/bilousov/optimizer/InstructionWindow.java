@@ -0,0 +1,86 @@
+package me.bilousov.optimizer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class InstructionWindow {
+
+    private final List<String> lines = new ArrayList<>();
+    private int instructionCount;
+
+    public int size(){
+        return instructionCount;
+    }
+
+    // fromEnd = 0 is the newest instruction, comments are skipped
+    public String get(int fromEnd){
+        return lines.get(lineIndex(fromEnd));
+    }
+
+    public boolean matches(int fromEnd, String instruction){
+        return fromEnd < instructionCount && get(fromEnd).equals(instruction);
+    }
+
+    public boolean isAddress(int fromEnd){
+        return fromEnd < instructionCount && get(fromEnd).startsWith("@");
+    }
+
+    // first instruction of a VM command, right after its comment. With debug markers on this is the
+    // marker, which has no effect but has to survive
+    public boolean isCommandStart(int fromEnd){
+        if(fromEnd >= instructionCount){
+            return false;
+        }
+
+        int index = lineIndex(fromEnd);
+
+        return index > 0 && isComment(lines.get(index - 1));
+    }
+
+    public void replace(int fromEnd, String instruction){
+        lines.set(lineIndex(fromEnd), instruction);
+    }
+
+    public void remove(int fromEnd){
+        lines.remove(lineIndex(fromEnd));
+        instructionCount--;
+    }
+
+    void add(String line){
+        lines.add(line);
+
+        if(!isComment(line)){
+            instructionCount++;
+        }
+    }
+
+    boolean isEmpty(){
+        return lines.isEmpty();
+    }
+
+    String removeOldest(){
+        String line = lines.remove(0);
+
+        if(!isComment(line)){
+            instructionCount--;
+        }
+
+        return line;
+    }
+
+    private int lineIndex(int fromEnd){
+        int remaining = fromEnd;
+
+        for(int i = lines.size() - 1; i >= 0; i--){
+            if(!isComment(lines.get(i)) && remaining-- == 0){
+                return i;
+            }
+        }
+
+        throw new IndexOutOfBoundsException("No instruction at " + fromEnd + " from the end of the window");
+    }
+
+    static boolean isComment(String line){
+        return line.startsWith("//");
+    }
+}
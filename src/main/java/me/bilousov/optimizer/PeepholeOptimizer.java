@@ -0,0 +1,111 @@
+package me.bilousov.optimizer;
+
+import me.bilousov.translator.AssemblySink;
+
+import java.io.IOException;
+import java.util.List;
+
+// sits between the translator and the writer, labels end the window since they can be jumped to
+public class PeepholeOptimizer implements AssemblySink {
+
+    private static final int MAX_WINDOW_SIZE = 32;
+
+    private final AssemblySink sink;
+    private final List<PeepholeRule> rules;
+    private final InstructionWindow window = new InstructionWindow();
+
+    private long inputInstructions;
+    private long outputInstructions;
+
+    public PeepholeOptimizer(AssemblySink sink) {
+        this(sink, defaultRules());
+    }
+
+    public PeepholeOptimizer(AssemblySink sink, List<PeepholeRule> rules) {
+        this.sink = sink;
+        this.rules = rules;
+    }
+
+    public static List<PeepholeRule> defaultRules(){
+        return List.of(new DeadLoadRule(), new RedundantReloadRule(), new ConstantMaterializationRule(),
+                new StackPushPopFusionRule());
+    }
+
+    @Override
+    public void write(String assembly) throws IOException {
+        int lineStart = 0;
+
+        while (lineStart < assembly.length()) {
+            int lineEnd = assembly.indexOf('\n', lineStart);
+
+            if (lineEnd < 0) {
+                lineEnd = assembly.length();
+            }
+
+            String line = assembly.substring(lineStart, lineEnd).trim();
+
+            if (!line.isEmpty()) {
+                addLine(line);
+            }
+
+            lineStart = lineEnd + 1;
+        }
+    }
+
+    public void flush() throws IOException {
+        while (!window.isEmpty()) {
+            emit(window.removeOldest());
+        }
+    }
+
+    public long getInputInstructionCount(){
+        return inputInstructions;
+    }
+
+    public long getOutputInstructionCount(){
+        return outputInstructions;
+    }
+
+    private void addLine(String line) throws IOException {
+        if (line.startsWith("(")) {
+            flush();
+            sink.write(line);
+            return;
+        }
+
+        window.add(line);
+
+        if (InstructionWindow.isComment(line)) {
+            return;
+        }
+
+        inputInstructions++;
+        applyRules();
+
+        while (window.size() > MAX_WINDOW_SIZE) {
+            emit(window.removeOldest());
+        }
+    }
+
+    private void applyRules(){
+        boolean changed = true;
+
+        while (changed) {
+            changed = false;
+
+            for (PeepholeRule rule : rules) {
+                if (rule.apply(window)) {
+                    changed = true;
+                }
+            }
+        }
+    }
+
+    private void emit(String line) throws IOException {
+        if (!InstructionWindow.isComment(line)) {
+            outputInstructions++;
+        }
+
+        sink.write(line);
+    }
+}
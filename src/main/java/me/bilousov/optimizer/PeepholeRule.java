@@ -0,0 +1,7 @@
+package me.bilousov.optimizer;
+
+public interface PeepholeRule {
+
+    // rewrites the newest instructions of the window, returns true if anything changed
+    boolean apply(InstructionWindow window);
+}
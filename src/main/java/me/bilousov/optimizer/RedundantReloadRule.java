@@ -0,0 +1,35 @@
+package me.bilousov.optimizer;
+
+// drops loads of a value that D still holds: D=M twice, or a store of D followed by a load from the same address
+public class RedundantReloadRule implements PeepholeRule {
+
+    @Override
+    public boolean apply(InstructionWindow window){
+        if(!window.matches(0, "D=M")){
+            return false;
+        }
+
+        if(window.matches(1, "D=M")){
+            window.remove(0);
+            return true;
+        }
+
+        // @X, M=D, @X, D=M
+        if(window.isAddress(1) && window.matches(2, "M=D") && window.matches(3, window.get(1))){
+            window.remove(0);
+            window.remove(0);
+            return true;
+        }
+
+        // @X, A=M, M=D, @X, A=M, D=M
+        if(window.matches(1, "A=M") && window.isAddress(2) && window.matches(3, "M=D")
+                && window.matches(4, "A=M") && window.matches(5, window.get(2))){
+            window.remove(0);
+            window.remove(0);
+            window.remove(0);
+            return true;
+        }
+
+        return false;
+    }
+}
@@ -0,0 +1,42 @@
+package me.bilousov.optimizer;
+
+// a push followed by a pop leaves SP unchanged, so the increment and decrement are dropped
+// as long as nothing in between uses SP, jumps or addresses memory through a pointer
+public class StackPushPopFusionRule implements PeepholeRule {
+
+    private static final int MAX_DISTANCE = 16;
+
+    @Override
+    public boolean apply(InstructionWindow window){
+        if(!window.matches(0, "M=M-1") || !window.matches(1, "@SP")){
+            return false;
+        }
+
+        for(int i = 2; i < window.size() - 1 && i < MAX_DISTANCE; i++){
+            String instruction = window.get(i);
+
+            if(instruction.equals("M=M+1") && window.matches(i + 1, "@SP")){
+                window.remove(i + 1);
+                window.remove(i);
+                window.remove(0);
+                return true;
+            }
+
+            if(!isStackIndependent(instruction)){
+                return false;
+            }
+        }
+
+        return false;
+    }
+
+    private boolean isStackIndependent(String instruction){
+        if(instruction.startsWith("@")){
+            return !instruction.equals("@SP");
+        }
+
+        int assignment = instruction.indexOf('=');
+
+        return instruction.indexOf(';') < 0 && (assignment < 0 || instruction.lastIndexOf('A', assignment) < 0);
+    }
+}
@@ -0,0 +1,188 @@
+package me.bilousov.optimizer;
+
+import me.bilousov.instruction.Opcode;
+import me.bilousov.instruction.Segment;
+import me.bilousov.instruction.SymbolTable;
+import me.bilousov.instruction.VMInstruction;
+import me.bilousov.parser.VMInstructionHandler;
+import me.bilousov.translator.VMOptimization;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Set;
+
+// sits between the reader and the translator and rewrites the VM commands of one file. At most four
+// commands are held back waiting for a pattern to complete, flush() hands them on at the end of the file.
+// Folded constants may be negative, the code generator loads those without a neg command.
+public class VMCodeOptimizer implements VMInstructionHandler {
+
+    private static final int MAX_PENDING = 4;
+
+    private final VMInstructionHandler next;
+    private final boolean constantFolding;
+    private final boolean pushPopMoves;
+    private final boolean negatedJumps;
+    private final Deque<VMInstruction> pending = new ArrayDeque<>(MAX_PENDING + 1);
+
+    private long inputInstructions;
+    private long outputInstructions;
+
+    public VMCodeOptimizer(Set<VMOptimization> optimizations, VMInstructionHandler next) {
+        this.next = next;
+        this.constantFolding = optimizations.contains(VMOptimization.CONSTANT_FOLDING);
+        this.pushPopMoves = optimizations.contains(VMOptimization.PUSH_POP_MOVES);
+        this.negatedJumps = optimizations.contains(VMOptimization.NEGATED_JUMPS);
+    }
+
+    @Override
+    public void handle(VMInstruction instruction) throws IOException {
+        inputInstructions++;
+
+        switch (instruction.getOpcode()) {
+            case PUSH -> hold(instruction);
+            case POP -> {
+                if (pushPopMoves && isPending(Opcode.PUSH)) {
+                    translateMove(pending.removeLast(), instruction);
+                } else {
+                    pass(instruction);
+                }
+            }
+            case ADD, SUB, AND, OR, EQ, GT, LT -> {
+                if (constantFolding && pendingConstants() >= 2 && isFoldable(instruction.getOpcode())) {
+                    int y = pending.removeLast().getIndex();
+                    int x = pending.removeLast().getIndex();
+                    hold(constant(foldBinary(instruction.getOpcode(), x, y)));
+                } else {
+                    pass(instruction);
+                }
+            }
+            case NEG, NOT -> {
+                if (constantFolding && pendingConstants() >= 1) {
+                    int x = pending.removeLast().getIndex();
+                    hold(constant((short) (instruction.getOpcode() == Opcode.NEG ? -x : ~x)));
+                } else if (negatedJumps && instruction.getOpcode() == Opcode.NOT) {
+                    hold(instruction);
+                } else {
+                    pass(instruction);
+                }
+            }
+            case IF_GOTO -> {
+                if (negatedJumps && isPending(Opcode.NOT)) {
+                    pending.removeLast();
+                    pass(new VMInstruction(Opcode.IF_NOT_GOTO, null, 0, instruction.getSymbol(),
+                            instruction.getSource() == null ? null : "not; " + instruction.getSource()));
+                } else if (constantFolding && pendingConstants() >= 1) {
+                    // a constant condition either always jumps or never does
+                    if (pending.removeLast().getIndex() != 0) {
+                        pass(new VMInstruction(Opcode.GOTO, null, 0, instruction.getSymbol(), null));
+                    } else {
+                        flush();
+                    }
+                } else {
+                    pass(instruction);
+                }
+            }
+            default -> pass(instruction);
+        }
+    }
+
+    public void flush() throws IOException {
+        while (!pending.isEmpty()) {
+            emit(pending.removeFirst());
+        }
+    }
+
+    public long getInputInstructionCount(){
+        return inputInstructions;
+    }
+
+    public long getOutputInstructionCount(){
+        return outputInstructions;
+    }
+
+    // only complete after flush()
+    public long getRemovedInstructionCount(){
+        return inputInstructions - outputInstructions;
+    }
+
+    private void translateMove(VMInstruction push, VMInstruction pop) throws IOException {
+        // popping a value back where it was pushed from changes nothing
+        if (push.getSegment() == pop.getSegment() && push.getIndex() == pop.getIndex()) {
+            flush();
+            return;
+        }
+
+        pass(new VMInstruction(push.getSegment(), push.getIndex(), pop.getSegment(), pop.getIndex(),
+                push.getText() + "; " + pop.getText()));
+    }
+
+    // the generated code compares on the sign of the 16 bit difference of the operands, which wraps
+    // where it does not fit. The stack and the register modes subtract in opposite orders, so such
+    // compares are left to run
+    private boolean isFoldable(Opcode opcode){
+        if (opcode != Opcode.GT && opcode != Opcode.LT) {
+            return true;
+        }
+
+        Iterator<VMInstruction> operands = pending.descendingIterator();
+        int difference = operands.next().getIndex() - operands.next().getIndex();
+
+        return Math.abs(difference) <= Short.MAX_VALUE;
+    }
+
+    // 16 bit arithmetic, compares are exact since the difference of folded operands fits
+    private static int foldBinary(Opcode opcode, int x, int y){
+        return switch (opcode) {
+            case ADD -> (short) (x + y);
+            case SUB -> (short) (x - y);
+            case AND -> (short) (x & y);
+            case OR -> (short) (x | y);
+            case EQ -> x == y ? -1 : 0;
+            case GT -> x > y ? -1 : 0;
+            default -> x < y ? -1 : 0;
+        };
+    }
+
+    private static VMInstruction constant(int value){
+        return new VMInstruction(Opcode.PUSH, Segment.CONSTANT, value, SymbolTable.NO_SYMBOL, "push constant " + value);
+    }
+
+    private boolean isPending(Opcode opcode){
+        return !pending.isEmpty() && pending.peekLast().getOpcode() == opcode;
+    }
+
+    // number of constant pushes at the end of the pending commands
+    private int pendingConstants(){
+        int count = 0;
+
+        for (Iterator<VMInstruction> iterator = pending.descendingIterator(); iterator.hasNext(); count++) {
+            VMInstruction instruction = iterator.next();
+
+            if (instruction.getOpcode() != Opcode.PUSH || instruction.getSegment() != Segment.CONSTANT) {
+                break;
+            }
+        }
+
+        return count;
+    }
+
+    private void hold(VMInstruction instruction) throws IOException {
+        pending.addLast(instruction);
+
+        while (pending.size() > MAX_PENDING) {
+            emit(pending.removeFirst());
+        }
+    }
+
+    private void pass(VMInstruction instruction) throws IOException {
+        flush();
+        emit(instruction);
+    }
+
+    private void emit(VMInstruction instruction) throws IOException {
+        outputInstructions++;
+        next.handle(instruction);
+    }
+}
@@ -0,0 +1,45 @@
+package me.bilousov.parser;
+
+import java.nio.ByteBuffer;
+
+// reusable view of one line of an ASCII buffer, so lines can be parsed without copying them
+class AsciiLine implements CharSequence {
+
+    private ByteBuffer buffer;
+    private int start;
+    private int length;
+
+    AsciiLine set(ByteBuffer buffer, int start, int end){
+        this.buffer = buffer;
+        this.start = start;
+        this.length = end - start;
+
+        return this;
+    }
+
+    @Override
+    public int length(){
+        return length;
+    }
+
+    @Override
+    public char charAt(int index){
+        return (char) (buffer.get(start + index) & 0xFF);
+    }
+
+    @Override
+    public CharSequence subSequence(int from, int to){
+        return toString().substring(from, to);
+    }
+
+    @Override
+    public String toString(){
+        char[] chars = new char[length];
+
+        for(int i = 0; i < length; i++){
+            chars[i] = charAt(i);
+        }
+
+        return new String(chars);
+    }
+}
@@ -1,22 +1,103 @@
 package me.bilousov.parser;
 
+import me.bilousov.cache.CachedFragment;
+import me.bilousov.cache.TranslationCache;
+import me.bilousov.instruction.ProgramSymbolTable;
+import me.bilousov.instruction.SymbolTable;
+import me.bilousov.instruction.VMInstruction;
+import me.bilousov.metrics.Stage;
+import me.bilousov.metrics.TranslationListener;
+import me.bilousov.metrics.TranslationMeter;
+import me.bilousov.optimizer.CallGraph;
+import me.bilousov.optimizer.DeadFunctionFilter;
+import me.bilousov.optimizer.FunctionInliner;
+import me.bilousov.optimizer.InlinePlan;
+import me.bilousov.optimizer.InlinePlanner;
+import me.bilousov.optimizer.VMCodeOptimizer;
+import me.bilousov.translator.AssemblyBuffer;
+import me.bilousov.translator.AssemblySink;
+import me.bilousov.translator.CodeGenerator;
 import me.bilousov.translator.CodeTranslator;
+import me.bilousov.translator.TranslationContext;
+import me.bilousov.translator.TranslatorOptions;
+import me.bilousov.translator.VMOptimization;
 
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
+// translate(...) and translateInParallel(...) only touch the context they are given, so one parser
+// can serve any number of concurrent programs. The remaining methods work on the parser's own
+// default context and translate one program per instance, like they always did.
 public class VMCodeParser {
 
     private static final String COMMENT_IDENTIFIER = "//";
-    private String fileName;
+    private static final String ENTRY_FUNCTION = "Sys.init";
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
 
-    private List<String> translatedLines = new ArrayList<>();
-    private CodeTranslator codeTranslator = new CodeTranslator();
+    private final TranslatorOptions options;
+    private final CodeGenerator generator;
+    private final TranslationCache translationCache;
+    private final TranslationContext defaultContext;
+    private final CodeTranslator codeTranslator;
+    private final VMInstructionParser instructionParser;
 
+    public VMCodeParser() {
+        this(TranslatorOptions.DEFAULT);
+    }
+
+    public VMCodeParser(TranslatorOptions options) {
+        this(options, null);
+    }
+
+    // the cache is used by every streaming translation, the list based methods never touch it
+    public VMCodeParser(TranslatorOptions options, TranslationCache translationCache) {
+        this(options, translationCache, null);
+    }
+
+    // without a listener nothing is timed or counted
+    public VMCodeParser(TranslatorOptions options, TranslationCache translationCache, TranslationListener listener) {
+        this.options = options;
+        this.generator = new CodeGenerator(options);
+        this.translationCache = translationCache;
+        this.defaultContext = new TranslationContext(listener);
+        this.codeTranslator = new CodeTranslator(generator, defaultContext);
+        this.instructionParser = new VMInstructionParser(defaultContext.getSymbolTable());
+    }
+
+    public long getSavedInstructionCount(){
+        return defaultContext.getSavedInstructionCount();
+    }
+
+    public long getDebugMarkerCost(){
+        return defaultContext.getDebugMarkerCost();
+    }
+
+    public int getFunctionCount(){
+        return defaultContext.getFunctionCount();
+    }
+
+    public long getRemovedFunctionCount(){
+        return defaultContext.getRemovedFunctionCount();
+    }
+
+    public long getRemovedFunctionInstructionCount(){
+        return defaultContext.getRemovedFunctionInstructionCount();
+    }
+
+    public long getRemovedVMCommandCount(){
+        return defaultContext.getRemovedVMCommandCount();
+    }
 
     public List<String> parseVMFiles(String path){
         File vmFile = new File(path);
@@ -38,6 +119,195 @@ public class VMCodeParser {
         return parseAndTranslateVMFile(vmFile);
     }
 
+    public void parseAndTranslateVMFiles(String path, AssemblySink sink) throws IOException {
+        translate(path, sink, defaultContext);
+    }
+
+    public void parseAndTranslateVMFilesInParallel(String path, AssemblySink sink, int threads) throws IOException {
+        translateInParallel(path, sink, threads, defaultContext);
+    }
+
+    public void translate(String path, AssemblySink sink, TranslationContext context) throws IOException {
+        translateInParallel(path, sink, 1, context);
+    }
+
+    // every file gets its own file scoped context and fragments are written in file name order, so the
+    // output does not depend on the number of threads. One thread translates on the calling thread and
+    // generates straight into the sink, so do numbered debug markers. Only the fragments of the files
+    // translated by the pool are held in memory until the files before them are written
+    public void translateInParallel(String path, AssemblySink sink, int threads, TranslationContext context) throws IOException {
+        File[] vmFiles = listVMFiles(new File(path));
+        Arrays.sort(vmFiles, Comparator.comparing(File::getName));
+        ProgramAnalysis analysis = analyzeProgram(vmFiles, context);
+
+        // numbered markers continue the ids of the previous file, which is only known once it is done
+        if (threads <= 1 || vmFiles.length <= 1 || options.getDebugMarkers().isNumbered()){
+            writeBootstrapCode(sink, context);
+
+            for(File file : vmFiles){
+                translateVMFile(file, analysis, context, sink);
+            }
+
+            return;
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+
+        try {
+            List<Future<AssemblyBuffer>> fragments = new ArrayList<>(vmFiles.length);
+
+            // the first file is written right after the bootstrap code, it is generated on the calling thread
+            for(File file : Arrays.asList(vmFiles).subList(1, vmFiles.length)){
+                fragments.add(pool.submit(() -> {
+                    FragmentSink fragment = new FragmentSink(null);
+                    translateVMFile(file, analysis, context, fragment);
+
+                    return fragment.getAssembly();
+                }));
+            }
+
+            writeBootstrapCode(sink, context);
+            translateVMFile(vmFiles[0], analysis, context, sink);
+
+            for(Future<AssemblyBuffer> fragment : fragments){
+                writeFragment(awaitFragment(fragment), sink, context.getListener());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private void writeBootstrapCode(AssemblySink sink, TranslationContext context) throws IOException {
+        TranslationContext bootstrapContext = context.newFileContext();
+        String bootstrapCode = generator.getBootstrapCode(bootstrapContext);
+        sink.write(bootstrapCode);
+        context.merge(bootstrapContext);
+
+        if (context.getListener() != null){
+            context.getListener().bootstrapTranslated(TranslationMeter.countInstructions(bootstrapCode));
+        }
+    }
+
+    private static void writeFragment(AssemblyBuffer fragment, AssemblySink sink, TranslationListener listener) throws IOException {
+        long writeStarted = listener == null ? 0 : System.nanoTime();
+
+        if (fragment.length() > 0){
+            sink.write(fragment);
+        }
+
+        if (listener != null){
+            listener.stageTimed(Stage.WRITE, System.nanoTime() - writeStarted);
+        }
+    }
+
+    private void translateVMFile(File vmFile, ProgramAnalysis analysis, TranslationContext context, AssemblySink out) throws IOException {
+        if (translationCache == null){
+            generateVMFile(vmFile, analysis, context, out);
+            return;
+        }
+
+        String cacheKey = translationCache.keyOf(vmFile, analysis.keptFunctions,
+                describeProgramContext(vmFile, analysis, context));
+        CachedFragment cached = translationCache.load(cacheKey);
+
+        if (cached != null){
+            context.addCacheHit(cached.getSavedInstructions(), cached.getDebugMarkerCost(), cached.getTranslatedFunctions());
+            context.addRemovedFunctions(cached.getRemovedFunctions(), cached.getRemovedFunctionInstructions());
+            context.addRemovedVMCommands(cached.getRemovedVMCommands());
+
+            if (context.getListener() != null){
+                context.getListener().fileLoadedFromCache(vmFile.getName(), TranslationMeter.countInstructions(cached.getAssembly()));
+            }
+
+            if (!cached.getAssembly().isEmpty()){
+                out.write(cached.getAssembly());
+            }
+
+            return;
+        }
+
+        context.addCacheMiss();
+        FragmentSink recorded = new FragmentSink(out);
+        TranslationContext fileContext = generateVMFile(vmFile, analysis, context, recorded);
+
+        translationCache.store(cacheKey, new CachedFragment(recorded.getAssembly().toString(),
+                fileContext.getSavedInstructionCount(), fileContext.getDebugMarkerCost(),
+                fileContext.getTranslatedFunctionCount(), fileContext.getRemovedFunctionCount(), fileContext.getRemovedFunctionInstructionCount(),
+                fileContext.getRemovedVMCommandCount()));
+    }
+
+    // generates the file straight into out and returns its merged file context
+    private TranslationContext generateVMFile(File vmFile, ProgramAnalysis analysis, TranslationContext context,
+                                              AssemblySink out) throws IOException {
+        TranslationContext fileContext = context.newFileContext();
+        VMInstructionParser fileParser = new VMInstructionParser(fileContext.getSymbolTable());
+        DeadFunctionFilter functionFilter = createFunctionFilter(analysis, fileContext.getSymbolTable());
+        TranslationListener listener = context.getListener();
+        TranslationMeter meter = listener == null ? null : new TranslationMeter(vmFile.getName(), listener);
+        AssemblyBuffer buffer = out.newBuffer();
+        VMInstructionHandler translation;
+
+        if (meter == null){
+            translation = instruction -> {
+                buffer.clear();
+                generator.translateInstruction(fileContext, instruction, vmFile.getName(), buffer);
+                out.write(buffer);
+            };
+        } else {
+            translation = instruction -> {
+                buffer.clear();
+                meter.startTranslation();
+                generator.translateInstruction(fileContext, instruction, vmFile.getName(), buffer);
+                meter.endTranslation(instruction, buffer);
+                out.write(buffer);
+                meter.endWrite();
+            };
+        }
+
+        VMCodeOptimizer optimizer = createOptimizer(translation);
+        VMInstructionHandler handler = createInliner(analysis.inlinePlan, vmFile.getName(), optimizer == null ? translation : optimizer);
+
+        readVMInstructions(vmFile, fileParser, listener, instruction -> {
+            if (functionFilter == null || functionFilter.keep(instruction)) {
+                handler.handle(instruction);
+            }
+        });
+
+        finishFile(optimizer, meter, fileContext, buffer, out);
+        collectRemovedFunctions(functionFilter, fileContext);
+        context.merge(fileContext);
+
+        return fileContext;
+    }
+
+    // what the file's output takes from the rest of the program: the inlined bodies and where the
+    // numbered markers of the file start
+    private String describeProgramContext(File vmFile, ProgramAnalysis analysis, TranslationContext context){
+        String inlined = analysis.inlinePlan == null ? null : analysis.inlinePlan.describe(vmFile.getName());
+
+        if (!options.getDebugMarkers().isNumbered()){
+            return inlined;
+        }
+
+        return "markers " + context.getDebugMarkerCost() + " " + context.getTranslatedFunctionCount()
+                + (inlined == null ? "" : " " + inlined);
+    }
+
+    private static AssemblyBuffer awaitFragment(Future<AssemblyBuffer> fragment) throws IOException {
+        try {
+            return fragment.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while translating VM files", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
     private List<String> parseVMDirectory(File directory){
         List<String> vmInstructions = new ArrayList<>();
 
@@ -51,6 +321,8 @@ public class VMCodeParser {
     }
 
     private List<String> parseAndTranslateVMDirectory(File directory){
+        List<String> translatedLines = new ArrayList<>();
+
         for(File file : directory.listFiles()){
             if(file.getName().endsWith(".vm")) {
                 translatedLines.addAll(parseAndTranslateVMFile(file));
@@ -61,33 +333,153 @@ public class VMCodeParser {
     }
 
     private List<String> parseAndTranslateVMFile(File vmFile){
-        List<String> vmInstructions = new ArrayList<>();
-        this.fileName = vmFile.getName();
+        List<VMInstruction> vmInstructions = new ArrayList<>();
+        instructionParser.startFile();
 
-        try {
-            BufferedReader bufferedReader = new BufferedReader(new FileReader(vmFile));
-            String line = bufferedReader.readLine();
+        for(String line : parseVMFile(vmFile)){
+            vmInstructions.add(instructionParser.parse(line));
+        }
 
-            while (line != null) {
-                if (lineIsInstruction(line)) {
-                    vmInstructions.add(line);
-                }
+        return codeTranslator.translateInstructionsToAssembly(vmInstructions, vmFile.getName());
+    }
 
-                line = bufferedReader.readLine();
+    // first pass over the program, only made when dead functions are removed, functions are inlined
+    // or the program symbols are asked for. It is not metered, the reading and parsing of the
+    // translation pass are what the metrics report
+    private ProgramAnalysis analyzeProgram(File[] vmFiles, TranslationContext context) throws IOException {
+        boolean inlining = options.getInlineThreshold() > 0;
+
+        if (!options.isDeadFunctionElimination() && !inlining && !options.isProgramSymbols()){
+            return ProgramAnalysis.NONE;
+        }
+
+        ProgramSymbolTable programSymbols = new ProgramSymbolTable(new SymbolTable());
+        SymbolTable graphSymbols = programSymbols.getSymbolTable();
+        VMInstructionParser graphParser = new VMInstructionParser(graphSymbols);
+        CallGraph callGraph = new CallGraph(graphSymbols);
+        InlinePlanner inlinePlanner = inlining ? new InlinePlanner(graphSymbols, options.getInlineThreshold(),
+                options.getInlineBudget()) : null;
+
+        for(File file : vmFiles){
+            programSymbols.startFile(file.getName());
+
+            if (inlinePlanner == null){
+                readVMInstructions(file, graphParser, null, instruction -> {
+                    programSymbols.add(instruction);
+                    callGraph.add(instruction);
+                });
+            } else {
+                inlinePlanner.startFile(file.getName());
+                readVMInstructions(file, graphParser, null, instruction -> {
+                    programSymbols.add(instruction);
+                    callGraph.add(instruction);
+                    inlinePlanner.add(instruction);
+                });
+                inlinePlanner.endFile();
             }
-        } catch (IOException e) {
-            e.printStackTrace();
+
+            callGraph.endFile();
+        }
+
+        programSymbols.validate();
+        context.setProgramSymbols(programSymbols);
+        context.setFunctionCount(callGraph.getFunctionCount());
+        Set<String> reachableFunctions = options.isDeadFunctionElimination() && callGraph.isDefined(ENTRY_FUNCTION)
+                ? callGraph.reachableFrom(ENTRY_FUNCTION) : null;
+
+        if (inlinePlanner == null){
+            return new ProgramAnalysis(reachableFunctions, reachableFunctions, null);
+        }
+
+        InlinePlan inlinePlan = inlinePlanner.plan(reachableFunctions);
+        Set<String> keptFunctions = removeUncalledFunctions(callGraph, reachableFunctions, inlinePlan.getUncalledFunctions());
+        context.setInlinedCalls(inlinePlan.getInlinedCallCount(), inlinePlan.getAddedInstructionCount(),
+                countRemoved(reachableFunctions == null ? callGraph.getFunctions() : reachableFunctions, keptFunctions));
+
+        return new ProgramAnalysis(keptFunctions, reachableFunctions, inlinePlan);
+    }
+
+    // a function inlined at every call site is left to the bootstrap's call of Sys.init to enter,
+    // without Sys.init the program may start anywhere and every function is kept
+    private static Set<String> removeUncalledFunctions(CallGraph callGraph, Set<String> reachableFunctions,
+                                                       Set<String> uncalledFunctions){
+        if (uncalledFunctions.isEmpty() || !callGraph.isDefined(ENTRY_FUNCTION)){
+            return reachableFunctions;
         }
 
-        return codeTranslator.translateCodeToAssembly(vmInstructions, vmFile.getName());
+        Set<String> keptFunctions = new HashSet<>(reachableFunctions == null ? callGraph.getFunctions() : reachableFunctions);
+        keptFunctions.removeAll(uncalledFunctions);
+        keptFunctions.add(ENTRY_FUNCTION);
+
+        return keptFunctions;
+    }
+
+    private static int countRemoved(Set<String> functions, Set<String> keptFunctions){
+        return keptFunctions == null ? 0 : functions.size() - keptFunctions.size();
+    }
+
+    private static DeadFunctionFilter createFunctionFilter(ProgramAnalysis analysis, SymbolTable symbols){
+        return analysis.keptFunctions == null ? null
+                : new DeadFunctionFilter(analysis.keptFunctions, analysis.reachableFunctions, symbols);
+    }
+
+    // null when no VM optimization is enabled, the commands then go straight to the translation
+    private VMCodeOptimizer createOptimizer(VMInstructionHandler translation){
+        Set<VMOptimization> optimizations = options.getVMOptimizations();
+
+        return optimizations.isEmpty() ? null : new VMCodeOptimizer(optimizations, translation);
+    }
+
+    private static VMInstructionHandler createInliner(InlinePlan inlinePlan, String fileName, VMInstructionHandler next){
+        FunctionInliner inliner = inlinePlan == null ? null : inlinePlan.createInliner(fileName, next);
+
+        return inliner == null ? next : inliner;
+    }
+
+    // the optimizer may still hold back the last commands of the file and the register mode the stack top
+    private void finishFile(VMCodeOptimizer optimizer, TranslationMeter meter, TranslationContext context,
+                            AssemblyBuffer spill, AssemblySink out) throws IOException {
+        if (optimizer != null){
+            optimizer.flush();
+            context.addRemovedVMCommands(optimizer.getRemovedInstructionCount());
+        }
+
+        spill.clear();
+        generator.finishFile(context, spill);
+
+        if (spill.length() > 0){
+            out.write(spill);
+        }
+
+        if (meter != null){
+            meter.endFile(spill);
+            meter.finish();
+        }
+    }
+
+    private static void collectRemovedFunctions(DeadFunctionFilter functionFilter, TranslationContext context){
+        if (functionFilter != null){
+            context.addRemovedFunctions(functionFilter.getRemovedFunctionCount(), functionFilter.getRemovedInstructionCount());
+        }
+    }
+
+    private static void readVMInstructions(File vmFile, VMInstructionParser parser, TranslationListener listener,
+                                           VMInstructionHandler handler) throws IOException {
+        new VMFileReader(listener).read(vmFile, parser, handler);
+    }
+
+    private static File[] listVMFiles(File path){
+        if (path.isDirectory()){
+            return path.listFiles((dir, name) -> name.endsWith(".vm"));
+        }
+
+        return new File[]{path};
     }
 
     private List<String> parseVMFile(File vmFile){
         List<String> vmInstructions = new ArrayList<>();
-        this.fileName = vmFile.getName();
 
-        try {
-            BufferedReader bufferedReader = new BufferedReader(new FileReader(vmFile));
+        try (BufferedReader bufferedReader = new BufferedReader(new FileReader(vmFile))) {
             String line = bufferedReader.readLine();
 
             while (line != null) {
@@ -98,19 +490,78 @@ public class VMCodeParser {
                 line = bufferedReader.readLine();
             }
         } catch (IOException e) {
-            e.printStackTrace();
+            throw new IllegalStateException(e);
         }
 
         return vmInstructions;
     }
 
-    public String getFileName(){
-        return fileName;
-    }
-
-    private boolean lineIsInstruction(String line){
+    private static boolean lineIsInstruction(String line){
         String trimmedLine = line.trim();
 
         return !trimmedLine.equals("") && !trimmedLine.startsWith(COMMENT_IDENTIFIER);
     }
+
+    // what the first pass found, either part is null when it was not asked for
+    private static final class ProgramAnalysis {
+
+        private static final ProgramAnalysis NONE = new ProgramAnalysis(null, null, null);
+
+        // the functions translated, null for all of them
+        private final Set<String> keptFunctions;
+        // the functions reachable from Sys.init, null when dead functions are not removed
+        private final Set<String> reachableFunctions;
+        private final InlinePlan inlinePlan;
+
+        private ProgramAnalysis(Set<String> keptFunctions, Set<String> reachableFunctions, InlinePlan inlinePlan) {
+            this.keptFunctions = keptFunctions;
+            this.reachableFunctions = reachableFunctions;
+            this.inlinePlan = inlinePlan;
+        }
+    }
+
+    // joins the writes of a file with the separator the writers put after every write, so the file
+    // is written to the sink at once. Passes every write on to out as well when it is not null
+    private static final class FragmentSink implements AssemblySink {
+
+        private final AssemblyBuffer assembly = new AssemblyBuffer();
+        private final AssemblySink out;
+        private boolean written;
+
+        private FragmentSink(AssemblySink out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(String translated) throws IOException {
+            if (out != null){
+                out.write(translated);
+            }
+
+            separate();
+            assembly.append(translated);
+        }
+
+        @Override
+        public void write(AssemblyBuffer translated) throws IOException {
+            if (out != null){
+                out.write(translated);
+            }
+
+            separate();
+            assembly.append(translated);
+        }
+
+        private AssemblyBuffer getAssembly(){
+            return assembly;
+        }
+
+        private void separate(){
+            if (written){
+                assembly.append(LINE_SEPARATOR);
+            }
+
+            written = true;
+        }
+    }
 }
@@ -0,0 +1,106 @@
+package me.bilousov.parser;
+
+import me.bilousov.instruction.VMInstruction;
+import me.bilousov.metrics.Stage;
+import me.bilousov.metrics.TranslationListener;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+// reads a whole .vm file as ASCII bytes and parses the commands in place, large files are memory mapped
+public class VMFileReader {
+
+    private static final long MAPPING_THRESHOLD = 1 << 20;
+
+    private final AsciiLine line = new AsciiLine();
+    private final TranslationListener listener;
+
+    public VMFileReader() {
+        this(null);
+    }
+
+    // with a listener the read and parse time of every file is reported, the handler time is not included
+    public VMFileReader(TranslationListener listener) {
+        this.listener = listener;
+    }
+
+    public void read(File vmFile, VMInstructionParser parser, VMInstructionHandler handler) throws IOException {
+        parser.startFile();
+        long readStarted = listener == null ? 0 : System.nanoTime();
+        ByteBuffer content;
+
+        try (FileChannel channel = FileChannel.open(vmFile.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+
+            if (size >= MAPPING_THRESHOLD) {
+                content = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            } else {
+                content = ByteBuffer.allocate((int) size);
+
+                while (content.hasRemaining() && channel.read(content) >= 0) {
+                    // keep reading until the buffer is full
+                }
+
+                content.flip();
+            }
+        }
+
+        if (listener != null) {
+            listener.stageTimed(Stage.READ, System.nanoTime() - readStarted);
+        }
+
+        int limit = content.limit();
+        int lineStart = 0;
+        int lineNumber = 0;
+        long parseNanos = 0;
+
+        while (lineStart < limit) {
+            int lineEnd = lineStart;
+
+            while (lineEnd < limit && content.get(lineEnd) != '\n') {
+                lineEnd++;
+            }
+
+            lineNumber++;
+
+            if (lineIsInstruction(content, lineStart, lineEnd)) {
+                if (listener == null) {
+                    handler.handle(parse(parser, line.set(content, lineStart, lineEnd), vmFile, lineNumber));
+                } else {
+                    long parseStarted = System.nanoTime();
+                    VMInstruction instruction = parse(parser, line.set(content, lineStart, lineEnd), vmFile, lineNumber);
+                    parseNanos += System.nanoTime() - parseStarted;
+                    handler.handle(instruction);
+                }
+            }
+
+            lineStart = lineEnd + 1;
+        }
+
+        if (listener != null) {
+            listener.stageTimed(Stage.PARSE, parseNanos);
+        }
+    }
+
+    // parse errors name the file and line they come from
+    private static VMInstruction parse(VMInstructionParser parser, AsciiLine line, File vmFile, int lineNumber){
+        try {
+            return parser.parse(line, null);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(vmFile.getName() + ":" + lineNumber + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static boolean lineIsInstruction(ByteBuffer content, int start, int end){
+        int first = start;
+
+        while (first < end && VMInstructionParser.isWhitespace((char) content.get(first))) {
+            first++;
+        }
+
+        return first < end && !(content.get(first) == '/' && first + 1 < end && content.get(first + 1) == '/');
+    }
+}
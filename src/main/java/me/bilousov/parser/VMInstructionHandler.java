@@ -0,0 +1,10 @@
+package me.bilousov.parser;
+
+import me.bilousov.instruction.VMInstruction;
+
+import java.io.IOException;
+
+public interface VMInstructionHandler {
+
+    void handle(VMInstruction instruction) throws IOException;
+}
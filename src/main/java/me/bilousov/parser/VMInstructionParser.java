@@ -0,0 +1,158 @@
+package me.bilousov.parser;
+
+import me.bilousov.instruction.Opcode;
+import me.bilousov.instruction.Segment;
+import me.bilousov.instruction.SymbolTable;
+import me.bilousov.instruction.VMInstruction;
+
+public class VMInstructionParser {
+
+    // largest value an A instruction can load
+    private static final int MAX_NUMBER = 32767;
+
+    private final SymbolTable symbolTable;
+    // labels are scoped to the function they appear in and interned as Function$LABEL
+    private final StringBuilder scopedLabel = new StringBuilder();
+    private String currentFunction;
+
+    private int tokenStart;
+    private int tokenEnd;
+
+    public VMInstructionParser(SymbolTable symbolTable) {
+        this.symbolTable = symbolTable;
+    }
+
+    // labels before the first function of a file are not scoped to the previous file's last function
+    public void startFile(){
+        currentFunction = null;
+    }
+
+    public VMInstruction parse(String line){
+        return parse(line, line);
+    }
+
+    // source may be null, the translator then prints the command from its parsed form
+    public VMInstruction parse(CharSequence line, String source){
+        int end = contentEnd(line);
+
+        if(!nextToken(line, 0, end)){
+            throw new IllegalArgumentException("Empty VM command: " + line);
+        }
+
+        Opcode opcode = Opcode.fromMnemonic(line, tokenStart, tokenEnd);
+
+        VMInstruction instruction = switch (opcode) {
+            case PUSH, POP -> parseMemoryAccess(opcode, line, end, source);
+            case LABEL, GOTO, IF_GOTO -> new VMInstruction(opcode, null, 0, nextLabel(line, end), source);
+            case FUNCTION, CALL -> {
+                int symbol = nextSymbol(line, end);
+
+                if(opcode == Opcode.FUNCTION){
+                    currentFunction = symbolTable.nameOf(symbol);
+                }
+
+                yield new VMInstruction(opcode, null, nextNumber(line, end), symbol, source);
+            }
+            default -> new VMInstruction(opcode, null, 0, SymbolTable.NO_SYMBOL, source);
+        };
+
+        if(nextToken(line, tokenEnd, end)){
+            throw new IllegalArgumentException("Unexpected token after VM command: " + line);
+        }
+
+        return instruction;
+    }
+
+    private VMInstruction parseMemoryAccess(Opcode opcode, CharSequence line, int end, String source){
+        requireToken(line, end);
+        Segment segment = Segment.fromName(line, tokenStart, tokenEnd);
+
+        if(opcode == Opcode.POP && segment == Segment.CONSTANT){
+            throw new IllegalArgumentException("Cannot pop to constant segment: " + line);
+        }
+
+        return new VMInstruction(opcode, segment, nextNumber(line, end), SymbolTable.NO_SYMBOL, source);
+    }
+
+    private int nextSymbol(CharSequence line, int end){
+        requireToken(line, end);
+
+        return symbolTable.intern(line, tokenStart, tokenEnd);
+    }
+
+    private int nextLabel(CharSequence line, int end){
+        if(currentFunction == null){
+            return nextSymbol(line, end);
+        }
+
+        requireToken(line, end);
+        scopedLabel.setLength(0);
+        scopedLabel.append(currentFunction).append('$').append(line, tokenStart, tokenEnd);
+
+        return symbolTable.intern(scopedLabel, 0, scopedLabel.length());
+    }
+
+    private int nextNumber(CharSequence line, int end){
+        requireToken(line, end);
+        int value = 0;
+
+        for(int i = tokenStart; i < tokenEnd; i++){
+            char c = line.charAt(i);
+
+            if(c < '0' || c > '9'){
+                throw new IllegalArgumentException("Invalid number in VM command: " + line);
+            }
+
+            value = value * 10 + (c - '0');
+
+            if(value > MAX_NUMBER){
+                throw new IllegalArgumentException("Number out of range 0.." + MAX_NUMBER + " in VM command: " + line);
+            }
+        }
+
+        return value;
+    }
+
+    private void requireToken(CharSequence line, int end){
+        if(!nextToken(line, tokenEnd, end)){
+            throw new IllegalArgumentException("Missing operand in VM command: " + line);
+        }
+    }
+
+    private boolean nextToken(CharSequence line, int from, int end){
+        int start = from;
+
+        while (start < end && isWhitespace(line.charAt(start))){
+            start++;
+        }
+
+        if(start == end){
+            return false;
+        }
+
+        int stop = start;
+
+        while (stop < end && !isWhitespace(line.charAt(stop))){
+            stop++;
+        }
+
+        tokenStart = start;
+        tokenEnd = stop;
+
+        return true;
+    }
+
+    private static int contentEnd(CharSequence line){
+        for(int i = 0; i < line.length() - 1; i++){
+            if(line.charAt(i) == '/' && line.charAt(i + 1) == '/'){
+                return i;
+            }
+        }
+
+        return line.length();
+    }
+
+    static boolean isWhitespace(char c){
+        return c == ' ' || c == '\t' || c == '\r';
+    }
+}
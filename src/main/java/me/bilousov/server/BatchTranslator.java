@@ -0,0 +1,154 @@
+package me.bilousov.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// translates many programs with the same options in one JVM on a bounded pool of workers, so the loaded
+// classes, the parsers and the JIT are shared. Every .asm is written beside its input as usual, the output
+// of each program is printed in one piece once it is done, and a failing program only shows up in the summary
+public class BatchTranslator {
+
+    private static final String MANIFEST_COMMENT = "#";
+
+    private final List<String> programs;
+    private final String[] options;
+    private final int workers;
+    private final TranslationService service;
+
+    public BatchTranslator(List<String> programs, String[] options, int workers, TranslationService service) {
+        this.programs = programs;
+        this.options = options;
+        this.workers = workers;
+        this.service = service;
+    }
+
+    // one .vm file or directory per line, blank lines and # comments are skipped and relative paths
+    // are resolved against the directory of the manifest
+    public static List<String> readManifest(Path manifest) throws IOException {
+        Path directory = manifest.toAbsolutePath().getParent();
+        List<String> programs = new ArrayList<>();
+
+        for (String line : Files.readAllLines(manifest)) {
+            String program = line.trim();
+
+            if (!program.isEmpty() && !program.startsWith(MANIFEST_COMMENT)) {
+                programs.add(directory.resolve(program).toString());
+            }
+        }
+
+        return programs;
+    }
+
+    // returns the number of programs that failed
+    public int run(PrintStream out) throws IOException {
+        long started = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(workers, runnable -> {
+            Thread thread = new Thread(runnable, "batch-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        List<ProgramResult> results = new ArrayList<>(programs.size());
+
+        try {
+            List<Future<ProgramResult>> pending = new ArrayList<>(programs.size());
+
+            for (String program : programs) {
+                pending.add(pool.submit(() -> translate(program)));
+            }
+
+            for (Future<ProgramResult> result : pending) {
+                ProgramResult programResult = await(result);
+                out.print(programResult.output);
+                results.add(programResult);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        return printSummary(results, (System.nanoTime() - started) / 1_000_000, out);
+    }
+
+    private ProgramResult translate(String program){
+        String[] args = new String[options.length + 1];
+        System.arraycopy(options, 0, args, 0, options.length);
+        args[options.length] = program;
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        long started = System.nanoTime();
+        Path outputPath = null;
+        Exception failure = null;
+
+        try (PrintStream programOut = new PrintStream(output, false, StandardCharsets.UTF_8)) {
+            try {
+                outputPath = service.translate(args, programOut);
+            } catch (Exception e) {
+                // one broken program must not stop the batch
+                failure = e;
+            }
+        }
+
+        return new ProgramResult(program, outputPath, failure, (System.nanoTime() - started) / 1_000_000,
+                output.toString(StandardCharsets.UTF_8));
+    }
+
+    private static ProgramResult await(Future<ProgramResult> result) throws IOException {
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while translating the batch", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private int printSummary(List<ProgramResult> results, long millis, PrintStream out){
+        int failed = 0;
+
+        for (ProgramResult result : results) {
+            if (result.failure != null) {
+                failed++;
+            }
+        }
+
+        out.println("Batch: " + results.size() + " programs, " + (results.size() - failed) + " translated, "
+                + failed + " failed in " + millis + " ms on " + workers + (workers == 1 ? " worker" : " workers"));
+
+        for (ProgramResult result : results) {
+            if (result.failure == null) {
+                out.printf("  OK     %6d ms  %s%n", result.millis, result.outputPath);
+            } else {
+                out.printf("  FAILED %6d ms  %s: %s%n", result.millis, result.program, result.failure);
+            }
+        }
+
+        return failed;
+    }
+
+    private static final class ProgramResult {
+
+        private final String program;
+        private final Path outputPath;
+        private final Exception failure;
+        private final long millis;
+        private final String output;
+
+        private ProgramResult(String program, Path outputPath, Exception failure, long millis, String output) {
+            this.program = program;
+            this.outputPath = outputPath;
+            this.failure = failure;
+            this.millis = millis;
+            this.output = output;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package me.bilousov.server;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+// translates the program once and again whenever one of its .vm files changes
+public class DirectoryWatcher {
+
+    // editors save in several steps, events that arrive this close together trigger one translation
+    private static final long QUIET_PERIOD_MILLIS = 50;
+
+    private final String[] args;
+    private final TranslationService service;
+    private final Path directory;
+
+    public DirectoryWatcher(String[] args, TranslationService service) {
+        this.args = args;
+        this.service = service;
+        this.directory = watchedDirectory(args);
+    }
+
+    public void run() throws IOException {
+        try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
+            directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+            System.out.println("Watching " + directory + " for .vm changes");
+            translate();
+
+            while (true) {
+                WatchKey key = watchService.take();
+                boolean changed = collectChanges(key);
+
+                // keep draining until the directory has been quiet for a moment
+                while ((key = watchService.poll(QUIET_PERIOD_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                    changed |= collectChanges(key);
+                }
+
+                if (changed) {
+                    translate();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            // the JVM is going down
+        }
+    }
+
+    private void translate(){
+        long started = System.nanoTime();
+
+        try {
+            Path outputPath = service.translate(args, System.out);
+            System.out.println("Translated " + outputPath + " in " + (System.nanoTime() - started) / 1_000_000 + " ms");
+        } catch (Exception e) {
+            // a half edited file must not stop the watcher
+            System.err.println("Translation failed: " + e);
+        }
+    }
+
+    private static boolean collectChanges(WatchKey key){
+        boolean changed = false;
+
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.context() instanceof Path changedPath && changedPath.toString().endsWith(".vm")) {
+                changed = true;
+            }
+        }
+
+        key.reset();
+
+        return changed;
+    }
+
+    private static Path watchedDirectory(String[] args){
+        for (int i = args.length - 1; i >= 0; i--) {
+            if (!args[i].startsWith("--")) {
+                Path path = Path.of(args[i]).toAbsolutePath().normalize();
+
+                return Files.isDirectory(path) ? path : path.getParent();
+            }
+        }
+
+        throw new IllegalArgumentException("No .vm file or directory given");
+    }
+}
@@ -0,0 +1,97 @@
+package me.bilousov.server;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// line based protocol on a loopback socket, every request line holds the usual command line arguments
+// separated by whitespace, e.g. "/path/to/Prog --compact". The summary lines come back first and the
+// reply ends with "OK <output path> <millis>" or "ERROR <message>". "shutdown" stops the server.
+public class TranslationServer {
+
+    private static final String SHUTDOWN_COMMAND = "shutdown";
+
+    private final int port;
+    private final TranslationService service;
+    private final ExecutorService connections = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "translation-connection");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile ServerSocket serverSocket;
+
+    public TranslationServer(int port, TranslationService service) {
+        this.port = port;
+        this.service = service;
+    }
+
+    public void run() throws IOException {
+        try (ServerSocket socket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+            serverSocket = socket;
+            System.out.println("Translation server listening on " + socket.getLocalSocketAddress());
+
+            while (!socket.isClosed()) {
+                try {
+                    Socket connection = socket.accept();
+                    connections.execute(() -> serve(connection));
+                } catch (SocketException e) {
+                    // closed by a shutdown request
+                }
+            }
+        } finally {
+            connections.shutdownNow();
+        }
+    }
+
+    private void serve(Socket connection){
+        try (connection;
+             BufferedReader in = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8));
+             PrintStream out = new PrintStream(new BufferedOutputStream(connection.getOutputStream()), false, StandardCharsets.UTF_8)) {
+            // the whole reply goes out in one flush, small writes would wait for delayed acks
+            connection.setTcpNoDelay(true);
+            String request = in.readLine();
+
+            while (request != null) {
+                request = request.trim();
+
+                if (request.equals(SHUTDOWN_COMMAND)) {
+                    out.println("OK shutdown");
+                    out.flush();
+                    serverSocket.close();
+                    return;
+                }
+
+                if (!request.isEmpty()) {
+                    handle(request.split("\\s+"), out);
+                    out.flush();
+                }
+
+                request = in.readLine();
+            }
+        } catch (IOException e) {
+            System.err.println("Translation connection failed: " + e.getMessage());
+        }
+    }
+
+    private void handle(String[] args, PrintStream out){
+        long started = System.nanoTime();
+
+        try {
+            Path outputPath = service.translate(args, out);
+            out.println("OK " + outputPath + " " + (System.nanoTime() - started) / 1_000_000);
+        } catch (Exception e) {
+            out.println("ERROR " + e);
+        }
+    }
+}
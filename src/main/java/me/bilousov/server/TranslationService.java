@@ -0,0 +1,11 @@
+package me.bilousov.server;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+
+// takes the same arguments as the command line and returns the written output file
+public interface TranslationService {
+
+    Path translate(String[] args, PrintStream out) throws IOException;
+}
@@ -0,0 +1,125 @@
+package me.bilousov.translator;
+
+import me.bilousov.metrics.TranslationMeter;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
+public class AssemblyBuffer {
+
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    private char[] chars;
+    private int length;
+
+    public AssemblyBuffer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public AssemblyBuffer(int capacity) {
+        chars = new char[capacity];
+    }
+
+    public AssemblyBuffer append(String text){
+        int textLength = text.length();
+        ensureCapacity(textLength);
+        text.getChars(0, textLength, chars, length);
+        length += textLength;
+
+        return this;
+    }
+
+    public AssemblyBuffer append(char c){
+        ensureCapacity(1);
+        chars[length++] = c;
+
+        return this;
+    }
+
+    public AssemblyBuffer append(int value){
+        if(value < 0){
+            append('-');
+            value = -value;
+        }
+
+        int digits = 1;
+
+        for(int rest = value / 10; rest > 0; rest /= 10){
+            digits++;
+        }
+
+        ensureCapacity(digits);
+
+        for(int i = length + digits - 1; i >= length; i--){
+            chars[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+
+        length += digits;
+
+        return this;
+    }
+
+    public AssemblyBuffer append(AssemblyBuffer assembly){
+        ensureCapacity(assembly.length);
+        System.arraycopy(assembly.chars, 0, chars, length, assembly.length);
+        length += assembly.length;
+
+        return this;
+    }
+
+    public AssemblyBuffer newLine(){
+        return append(LINE_SEPARATOR);
+    }
+
+    public AssemblyBuffer line(String instruction){
+        return append(instruction).newLine();
+    }
+
+    public AssemblyBuffer address(String symbol){
+        return append('@').append(symbol).newLine();
+    }
+
+    public AssemblyBuffer address(int value){
+        return append('@').append(value).newLine();
+    }
+
+    public AssemblyBuffer label(String symbol){
+        return append('(').append(symbol).append(')').newLine();
+    }
+
+    public void clear(){
+        length = 0;
+    }
+
+    public int length(){
+        return length;
+    }
+
+    // lines that end up in ROM, labels and comments do not
+    public int countInstructions(){
+        return TranslationMeter.countInstructions(CharBuffer.wrap(chars, 0, length));
+    }
+
+    public char[] getChars(){
+        return chars;
+    }
+
+    public void writeTo(Writer writer) throws IOException {
+        writer.write(chars, 0, length);
+    }
+
+    @Override
+    public String toString(){
+        return new String(chars, 0, length);
+    }
+
+    private void ensureCapacity(int additional){
+        if(length + additional > chars.length){
+            chars = Arrays.copyOf(chars, Math.max(chars.length * 2, length + additional));
+        }
+    }
+}
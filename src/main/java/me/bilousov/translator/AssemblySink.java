@@ -0,0 +1,17 @@
+package me.bilousov.translator;
+
+import java.io.IOException;
+
+public interface AssemblySink {
+
+    void write(String assembly) throws IOException;
+
+    default void write(AssemblyBuffer assembly) throws IOException {
+        write(assembly.toString());
+    }
+
+    // buffer to generate the commands written to this sink into, one per file and thread
+    default AssemblyBuffer newBuffer(){
+        return new AssemblyBuffer();
+    }
+}
@@ -0,0 +1,666 @@
+package me.bilousov.translator;
+
+import me.bilousov.instruction.Opcode;
+import me.bilousov.instruction.Segment;
+import me.bilousov.instruction.SymbolTable;
+import me.bilousov.instruction.VMInstruction;
+
+import java.io.IOException;
+
+// stateless apart from the options, one instance can translate any number of programs on any number of
+// threads as long as every program brings its own TranslationContext
+public class CodeGenerator {
+
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+    private static final String ENTRY_FUNCTION = "Sys.init";
+    private static final String BOOTSTRAP_FILE_NAME = "Sys.vm";
+    private static final String SCOPED_BOOTSTRAP_FILE_NAME = "Bootstrap";
+    private static final String FIXED_DEBUG_MARKER = "@22222";
+    private static final int MAX_ADDRESS = 0x7FFF;
+    // deeper segment offsets are stored through R13/R14 instead of a chain of A=A+1
+    private static final int MAX_STEPPED_OFFSET = 10;
+
+    // fixed instruction sequences are built once and copied into the output buffer as is
+    private static final String BOOTSTRAP_PROLOGUE = lines("// bootstrap code", "@256", "D=A", "@SP", "M=D");
+    private static final String PUSH_D = lines("@SP", "A=M", "M=D", "@SP", "M=M+1");
+    private static final String POP_TO_D = lines("@SP", "M=M-1", "A=M", "D=M");
+    private static final String TOP_TO_D = lines("@SP", "AM=M-1", "D=M");
+    private static final String SPILL_STACK_TOP = lines("// spill stack top") + PUSH_D;
+    // expects the return address in D and leaves the new SP, which is also the new LCL, in D
+    private static final String CALL_FRAME_SAVE = lines(
+            "@SP", "A=M", "M=D",
+            "@LCL", "D=M", "@SP", "AM=M+1", "M=D",
+            "@ARG", "D=M", "@SP", "AM=M+1", "M=D",
+            "@THIS", "D=M", "@SP", "AM=M+1", "M=D",
+            "@THAT", "D=M", "@SP", "AM=M+1", "M=D",
+            "@SP", "MD=M+1", "@LCL", "M=D");
+    private static final String SINGLE_LOCAL_INIT = lines("@SP", "M=M+1", "A=M-1", "M=0");
+    private static final String BINARY_OPERANDS = lines("@SP", "A=M", "A=A-1", "D=M", "@SP", "A=M", "A=A-1", "A=A-1");
+    private static final String BINARY_RESULT = lines("M=D", "@SP", "M=M-1");
+    private static final String COMPARE_OPERANDS = BINARY_OPERANDS + lines("D=D-M");
+    private static final String RETURN_EPILOGUE = lines(
+            // save LCL pointer to R13
+            "@LCL", "D=M", "@R13", "M=D",
+            // get the return address before a call without arguments overwrites it with the return value
+            "@5", "A=D-A", "D=M", "@R14", "M=D",
+            // place return value to ARG 0
+            "@SP", "A=M-1", "D=M", "@ARG", "A=M", "M=D",
+            // place stack pointer after return value
+            "D=A+1", "@SP", "M=D",
+            // recover the callers segments, walking down from the end of the frame
+            "@R13", "AM=M-1", "D=M", "@THAT", "M=D",
+            "@R13", "AM=M-1", "D=M", "@THIS", "M=D",
+            "@R13", "AM=M-1", "D=M", "@ARG", "M=D",
+            "@R13", "AM=M-1", "D=M", "@LCL", "M=D",
+            // jump to return address
+            "@R14", "A=M", "0;JMP");
+
+    // shared routines of the compact mode: $$CALL expects the return address in D, the callee
+    // address in R13 and nArgs in R14, $$COMPARE_* expect the return address in D
+    private static final String SHARED_ROUTINES = lines("// shared call/return/compare routines", "($$CALL)")
+            + CALL_FRAME_SAVE
+            + lines("@R14", "D=D-M", "@5", "D=D-A", "@ARG", "M=D")
+            + lines("@R13", "A=M", "0;JMP", "($$RETURN)")
+            + RETURN_EPILOGUE
+            + compareRoutine("$$COMPARE_EQ", "D;JEQ")
+            + compareRoutine("$$COMPARE_GT", "D;JGT")
+            + compareRoutine("$$COMPARE_LT", "D;JLT")
+            + lines("($$COMPARE_TRUE)", "@SP", "A=M-1", "M=-1", "@R15", "A=M", "0;JMP")
+            + lines("($$COMPARE_FALSE)", "@SP", "A=M-1", "M=0", "@R15", "A=M", "0;JMP");
+
+    // sizes of the inline sequences replaced by the shared routines, used to report the savings
+    private static final int INLINE_CALL_SIZE = 2 + countInstructions(CALL_FRAME_SAVE) + 4 + 2;
+    private static final int COMPACT_CALL_SIZE = 12;
+    private static final int INLINE_RETURN_SIZE = countInstructions(RETURN_EPILOGUE);
+    private static final int COMPACT_RETURN_SIZE = 2;
+    private static final int INLINE_COMPARE_SIZE = countInstructions(COMPARE_OPERANDS) + 17;
+    private static final int COMPACT_COMPARE_SIZE = 4;
+
+    private final TranslatorOptions options;
+    private final boolean compactCode;
+    private final DebugMarkers debugMarkers;
+    private final boolean registerStackTop;
+
+    public CodeGenerator(TranslatorOptions options) {
+        this.options = options;
+        this.compactCode = options.isCompactCode();
+        this.debugMarkers = options.getDebugMarkers();
+        this.registerStackTop = options.isRegisterStackTop();
+    }
+
+    public TranslatorOptions getOptions(){
+        return options;
+    }
+
+    public void translateInstruction(TranslationContext context, VMInstruction instruction, String fileName,
+                                     AssemblySink sink) throws IOException {
+        if (context.bootstrapPending){
+            sink.write(getBootstrapCode(context));
+        }
+
+        AssemblyBuffer buffer = context.getBuffer();
+        buffer.clear();
+        translateInstruction(context, instruction, fileName, buffer);
+        sink.write(buffer);
+    }
+
+    // writes back a stack top still held in D, must follow the last instruction of every file
+    public void finishFile(TranslationContext context, AssemblySink sink) throws IOException {
+        if(context.stackTopInD){
+            AssemblyBuffer buffer = context.getBuffer();
+            buffer.clear();
+            finishFile(context, buffer);
+            sink.write(buffer);
+        }
+    }
+
+    public void finishFile(TranslationContext context, AssemblyBuffer out){
+        spillStackTop(context, out);
+    }
+
+    public String getBootstrapCode(TranslationContext context){
+        AssemblyBuffer buffer = context.getBuffer();
+        buffer.clear();
+        translateBootstrapCode(context, buffer);
+
+        return buffer.toString();
+    }
+
+    public void translateBootstrapCode(TranslationContext context, AssemblyBuffer out){
+        VMInstruction entryCall = new VMInstruction(Opcode.CALL, null, 0, context.getSymbolTable().intern(ENTRY_FUNCTION),
+                "call " + ENTRY_FUNCTION + " 0");
+
+        out.append(BOOTSTRAP_PROLOGUE);
+        translateCallCommand(context, out, entryCall,
+                context.isFileScopedLabels() ? SCOPED_BOOTSTRAP_FILE_NAME : BOOTSTRAP_FILE_NAME);
+
+        if(compactCode){
+            out.append(SHARED_ROUTINES);
+            context.savedInstructions -= countInstructions(SHARED_ROUTINES);
+        }
+
+        context.bootstrapPending = false;
+    }
+
+    public void translateInstruction(TranslationContext context, VMInstruction instruction, String fileName, AssemblyBuffer out){
+        translateComment(context, out, instruction);
+
+        if(instruction.getOpcode() == Opcode.FUNCTION){
+            context.functionId++;
+        }
+
+        translateDebugMarker(context, out);
+        context.translatedCommands++;
+
+        if(registerStackTop && translateRegisterStackCommand(context, out, instruction, fileName)){
+            return;
+        }
+
+        switch (instruction.getOpcode()) {
+            case PUSH -> translatePushCommand(out, instruction, fileName);
+            case POP -> translatePopCommand(out, instruction, fileName);
+            case ADD, SUB, OR, AND -> translateArthCommWithTwoOperands(out, instruction.getOpcode());
+            case NEG, NOT -> translateLogicalCommand(out, instruction.getOpcode());
+            case LABEL -> translateLabelCommand(context, out, instruction);
+            case GOTO -> translateGotoCommand(context, out, instruction);
+            case IF_GOTO -> translateIfGotoCommand(context, out, instruction);
+            case CALL -> translateCallCommand(context, out, instruction, fileName);
+            case FUNCTION -> translateFunctionCommand(context, out, instruction);
+            case RETURN -> translateReturnCommand(context, out);
+            case EQ, GT, LT -> translateCompareCommand(context, out, instruction.getOpcode(), fileName);
+            case MOVE -> translateMoveCommand(out, instruction, fileName);
+            case IF_NOT_GOTO -> translateIfNotGotoCommand(context, out, instruction);
+            case DROP -> translateDropCommand(out, instruction.getIndex());
+        }
+    }
+
+    // returns false for the control flow commands, they see the regular stack once the top is spilled
+    private boolean translateRegisterStackCommand(TranslationContext context, AssemblyBuffer out, VMInstruction instruction,
+                                                  String fileName){
+        Opcode opcode = instruction.getOpcode();
+
+        switch (opcode) {
+            case PUSH -> {
+                spillStackTop(context, out);
+                loadSegmentValue(out, instruction.getSegment(), instruction.getIndex(), fileName);
+                context.stackTopInD = true;
+            }
+            case POP -> {
+                loadStackTop(context, out);
+                storeSegmentValue(out, instruction.getSegment(), instruction.getIndex(), fileName);
+                context.stackTopInD = false;
+            }
+            case MOVE -> {
+                spillStackTop(context, out);
+                translateMoveCommand(out, instruction, fileName);
+            }
+            case DROP -> {
+                // a cached top is dropped without ever reaching RAM
+                translateDropCommand(out, context.stackTopInD ? instruction.getIndex() - 1 : instruction.getIndex());
+                context.stackTopInD = false;
+            }
+            case ADD, SUB, OR, AND -> {
+                loadStackTop(context, out);
+                out.line("@SP").line("AM=M-1").line(getOperation(opcode));
+                context.stackTopInD = true;
+            }
+            case NEG, NOT -> {
+                if(context.stackTopInD){
+                    out.line(opcode == Opcode.NEG ? "D=-D" : "D=!D");
+                } else {
+                    out.line("@SP").line("A=M-1").line(opcode == Opcode.NEG ? "M=-M" : "M=!M");
+                }
+            }
+            case EQ, GT, LT -> {
+                loadStackTop(context, out);
+                out.line("@SP").line("AM=M-1").line("D=M-D");
+                appendCompareLabel(context, out.append('@'), fileName, "POS_RESULT_").newLine();
+                out.line(switch (opcode) {
+                    case EQ -> "D;JEQ";
+                    case GT -> "D;JGT";
+                    default -> "D;JLT";
+                });
+                out.line("D=0");
+                appendCompareLabel(context, out.append('@'), fileName, "NEG_RESULT_").newLine();
+                out.line("0;JMP");
+                appendCompareLabel(context, out.append('('), fileName, "POS_RESULT_").append(')').newLine();
+                out.line("D=-1");
+                appendCompareLabel(context, out.append('('), fileName, "NEG_RESULT_").append(')').newLine();
+
+                context.labelId++;
+                context.stackTopInD = true;
+            }
+            case IF_GOTO -> {
+                loadStackTop(context, out);
+                out.address(context.getSymbolTable().nameOf(instruction.getSymbol()));
+                out.line("D;JNE");
+                context.stackTopInD = false;
+            }
+            case IF_NOT_GOTO -> {
+                if(context.stackTopInD){
+                    out.line("D=D+1");
+                } else {
+                    out.line("@SP").line("AM=M-1").line("D=M+1");
+                }
+                out.address(context.getSymbolTable().nameOf(instruction.getSymbol()));
+                out.line("D;JNE");
+                context.stackTopInD = false;
+            }
+            default -> {
+                spillStackTop(context, out);
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private void spillStackTop(TranslationContext context, AssemblyBuffer out){
+        if(context.stackTopInD){
+            out.append(SPILL_STACK_TOP);
+            context.stackTopInD = false;
+        }
+    }
+
+    private void loadStackTop(TranslationContext context, AssemblyBuffer out){
+        if(!context.stackTopInD){
+            out.append(TOP_TO_D);
+        }
+    }
+
+    private void loadSegmentValue(AssemblyBuffer out, Segment segment, int index, String fileName){
+        switch (segment) {
+            case CONSTANT -> {
+                if(index == 0 || index == 1){
+                    out.line(index == 0 ? "D=0" : "D=1");
+                } else {
+                    loadConstant(out, index);
+                }
+            }
+            case STATIC -> out.append('@').append(fileName).append('.').append(index).newLine().line("D=M");
+            case POINTER -> out.line(index == 0 ? "@THIS" : "@THAT").line("D=M");
+            case TEMP -> out.address(5 + index).line("D=M");
+            case STACK -> {
+                if(index > MAX_STEPPED_OFFSET){
+                    out.line("@SP").line("D=M").address(index).line("A=D-A");
+                } else {
+                    stepBelowStackPointer(out, index);
+                }
+                out.line("D=M");
+            }
+            default -> {
+                out.line(segment.getBaseAddress());
+                if(index == 0){
+                    out.line("A=M");
+                } else if(index == 1){
+                    out.line("A=M+1");
+                } else {
+                    out.line("D=M").address(index).line("A=D+A");
+                }
+                out.line("D=M");
+            }
+        }
+    }
+
+    // expects the value in D
+    private void storeSegmentValue(AssemblyBuffer out, Segment segment, int index, String fileName){
+        switch (segment) {
+            case STATIC -> out.append('@').append(fileName).append('.').append(index).newLine();
+            case POINTER -> out.line(index == 0 ? "@THIS" : "@THAT");
+            case TEMP -> out.address(5 + index);
+            case STACK -> {
+                if(index > MAX_STEPPED_OFFSET){
+                    out.line("@R13").line("M=D");
+                    out.line("@SP").line("D=M").address(index).line("D=D-A");
+                    out.line("@R14").line("M=D").line("@R13").line("D=M").line("@R14").line("A=M");
+                } else {
+                    stepBelowStackPointer(out, index);
+                }
+            }
+            default -> {
+                if(index > MAX_STEPPED_OFFSET){
+                    out.line("@R13").line("M=D");
+                    out.address(index).line("D=A").line(segment.getBaseAddress()).line("D=D+M");
+                    out.line("@R14").line("M=D").line("@R13").line("D=M").line("@R14").line("A=M");
+                } else {
+                    out.line(segment.getBaseAddress());
+                    out.line(index == 0 ? "A=M" : "A=M+1");
+                    for(int i = 1; i < index; i++){
+                        out.line("A=A+1");
+                    }
+                }
+            }
+        }
+
+        out.line("M=D");
+    }
+
+    // A = SP - offset, offset is at least 1
+    private void stepBelowStackPointer(AssemblyBuffer out, int offset){
+        out.line("@SP").line("A=M-1");
+        for(int i = 1; i < offset; i++){
+            out.line("A=A-1");
+        }
+    }
+
+    // count is the number of values to remove from RAM, a stack top cached in D is not one of them
+    private void translateDropCommand(AssemblyBuffer out, int count){
+        if(count == 1){
+            out.line("@SP").line("M=M-1");
+        } else if(count > 1){
+            out.address(count).line("D=A").line("@SP").line("M=M-D");
+        }
+    }
+
+    // folded constants can be negative, A only takes 15 bit values
+    private void loadConstant(AssemblyBuffer out, int value){
+        if(value >= 0){
+            out.address(value).line("D=A");
+        } else if(value == -1){
+            out.line("D=-1");
+        } else if(value == Short.MIN_VALUE){
+            out.address(MAX_ADDRESS).line("D=!A");
+        } else {
+            out.address(-value).line("D=-A");
+        }
+    }
+
+    private void translateComment(TranslationContext context, AssemblyBuffer out, VMInstruction instruction){
+        out.append("// ");
+
+        if(instruction.getSource() != null){
+            out.append(instruction.getSource()).newLine();
+            return;
+        }
+
+        out.append(instruction.getOpcode().getMnemonic());
+
+        if(instruction.getSegment() != null){
+            out.append(' ').append(instruction.getSegment().getName()).append(' ').append(instruction.getIndex());
+        } else if(instruction.getSymbol() != SymbolTable.NO_SYMBOL){
+            out.append(' ').append(context.getSymbolTable().nameOf(instruction.getSymbol()));
+
+            if(instruction.getOpcode() == Opcode.FUNCTION || instruction.getOpcode() == Opcode.CALL){
+                out.append(' ').append(instruction.getIndex());
+            }
+        }
+
+        out.newLine();
+    }
+
+    private void translateDebugMarker(TranslationContext context, AssemblyBuffer out){
+        switch (debugMarkers) {
+            case FIXED -> out.line(FIXED_DEBUG_MARKER);
+            case SOURCE_LINE -> out.address((int) ((context.firstCommand + context.translatedCommands) & MAX_ADDRESS));
+            case FUNCTION -> out.address(Math.max(context.firstFunction + context.functionId, 0) & MAX_ADDRESS);
+            case NONE -> { }
+        }
+    }
+
+    private void translatePushCommand(AssemblyBuffer out, VMInstruction instruction, String fileName){
+        if(instruction.getSegment() == Segment.CONSTANT){
+            loadConstant(out, instruction.getIndex());
+        } else if(instruction.getSegment() == Segment.STACK){
+            loadSegmentValue(out, Segment.STACK, instruction.getIndex(), fileName);
+        } else {
+            selectMemorySegment(out, instruction, fileName);
+            getValueFromMemorySegment(out, instruction.getSegment());
+        }
+
+        out.append(PUSH_D);
+    }
+
+    private void translatePopCommand(AssemblyBuffer out, VMInstruction instruction, String fileName){
+        if(instruction.getSegment() == Segment.STACK){
+            out.append(POP_TO_D);
+            storeSegmentValue(out, Segment.STACK, instruction.getIndex(), fileName);
+            return;
+        }
+
+        getProperMemorySegment(instruction, out, fileName);
+        out.append(POP_TO_D);
+        pushValueToMemSegment(instruction, out);
+    }
+
+    private void translateArthCommWithTwoOperands(AssemblyBuffer out, Opcode arthCommand){
+        out.append(BINARY_OPERANDS);
+        out.line(getOperation(arthCommand));
+        out.append(BINARY_RESULT);
+    }
+
+    private void translateLogicalCommand(AssemblyBuffer out, Opcode logCommand){
+        out.line("@SP").line("A=M").line("A=A-1");
+        out.line(logCommand == Opcode.NEG ? "M=-M" : "M=!M");
+    }
+
+    private void translateLabelCommand(TranslationContext context, AssemblyBuffer out, VMInstruction labelCommand){
+        out.label(context.getSymbolTable().nameOf(labelCommand.getSymbol()));
+    }
+
+    private void translateGotoCommand(TranslationContext context, AssemblyBuffer out, VMInstruction gotoCommand){
+        out.address(context.getSymbolTable().nameOf(gotoCommand.getSymbol()));
+        out.line("0;JMP");
+    }
+
+    private void translateIfGotoCommand(TranslationContext context, AssemblyBuffer out, VMInstruction ifGotoCommand){
+        out.append(POP_TO_D);
+        out.line("D=M");
+        out.address(context.getSymbolTable().nameOf(ifGotoCommand.getSymbol()));
+        out.line("D;JNE");
+    }
+
+    // !x != 0 exactly when x + 1 != 0
+    private void translateIfNotGotoCommand(TranslationContext context, AssemblyBuffer out, VMInstruction ifNotGotoCommand){
+        out.line("@SP").line("AM=M-1").line("D=M+1");
+        out.address(context.getSymbolTable().nameOf(ifNotGotoCommand.getSymbol()));
+        out.line("D;JNE");
+    }
+
+    // the stack is left alone, D carries the value
+    private void translateMoveCommand(AssemblyBuffer out, VMInstruction moveCommand, String fileName){
+        loadSegmentValue(out, moveCommand.getSourceSegment(), moveCommand.getSourceIndex(), fileName);
+        storeSegmentValue(out, moveCommand.getSegment(), moveCommand.getIndex(), fileName);
+    }
+
+    private void translateCallCommand(TranslationContext context, AssemblyBuffer out, VMInstruction callCommand, String fileName){
+        if(compactCode){
+            translateCompactCallCommand(context, out, callCommand, fileName);
+            return;
+        }
+
+        int returnAddress = context.returnAddressId++;
+        // push return address and segments of a caller, LCL of the called func is the SP after them
+        out.append('@').append(fileName).append("$ret.").append(returnAddress).newLine();
+        out.line("D=A");
+        out.append(CALL_FRAME_SAVE);
+        // the argument count is known here, so ARG is SP less a constant
+        out.address(5 + callCommand.getIndex());
+        out.line("D=D-A").line("@ARG").line("M=D");
+        // goto called func
+        out.address(context.getSymbolTable().nameOf(callCommand.getSymbol()));
+        out.line("0;JMP");
+        // insert return label
+        out.append('(').append(fileName).append("$ret.").append(returnAddress).append(')').newLine();
+    }
+
+    private void translateCompactCallCommand(TranslationContext context, AssemblyBuffer out, VMInstruction callCommand,
+                                             String fileName){
+        int returnAddress = context.returnAddressId++;
+
+        out.address(callCommand.getIndex()).line("D=A").line("@R14").line("M=D");
+        out.address(context.getSymbolTable().nameOf(callCommand.getSymbol())).line("D=A").line("@R13").line("M=D");
+        out.append('@').append(fileName).append("$ret.").append(returnAddress).newLine();
+        out.line("D=A").line("@$$CALL").line("0;JMP");
+        out.append('(').append(fileName).append("$ret.").append(returnAddress).append(')').newLine();
+
+        context.savedInstructions += INLINE_CALL_SIZE - COMPACT_CALL_SIZE;
+    }
+
+    private void translateReturnCommand(TranslationContext context, AssemblyBuffer out){
+        if(compactCode){
+            out.line("@$$RETURN").line("0;JMP");
+            context.savedInstructions += INLINE_RETURN_SIZE - COMPACT_RETURN_SIZE;
+            return;
+        }
+
+        out.append(RETURN_EPILOGUE);
+    }
+
+    private void translateFunctionCommand(TranslationContext context, AssemblyBuffer out, VMInstruction functionCommand){
+        // generate label to which PC will jump
+        out.label(context.getSymbolTable().nameOf(functionCommand.getSymbol()));
+        // generate local segment
+        int localCount = functionCommand.getIndex();
+
+        if(localCount == 1){
+            out.append(SINGLE_LOCAL_INIT);
+        } else if(localCount > 1){
+            // zero the locals through A and move SP past them once
+            out.line("@SP").line("A=M").line("M=0");
+            for(int i = 1; i < localCount; i++){
+                out.line("A=A+1").line("M=0");
+            }
+            out.line("D=A+1").line("@SP").line("M=D");
+        }
+    }
+
+    private void translateCompareCommand(TranslationContext context, AssemblyBuffer out, Opcode compCommand, String fileName){
+        if(compactCode){
+            translateCompactCompareCommand(context, out, compCommand, fileName);
+            return;
+        }
+
+        out.append(COMPARE_OPERANDS);
+        appendCompareLabel(context, out.append('@'), fileName, "POS_RESULT_").newLine();
+        out.line(getJumpInstr(compCommand));
+        out.line("@SP").line("A=M").line("A=A-1").line("A=A-1").line("M=0");
+        appendCompareLabel(context, out.append('@'), fileName, "NEG_RESULT_").newLine();
+        out.line("0;JMP");
+        appendCompareLabel(context, out.append('('), fileName, "POS_RESULT_").append(')').newLine();
+        out.line("@SP").line("@SP").line("A=M").line("A=A-1").line("A=A-1").line("M=-1");
+        appendCompareLabel(context, out.append('('), fileName, "NEG_RESULT_").append(')').newLine();
+        out.line("@SP").line("M=M-1");
+
+        context.labelId++;
+    }
+
+    private void translateCompactCompareCommand(TranslationContext context, AssemblyBuffer out, Opcode compCommand,
+                                                String fileName){
+        appendCompareLabel(context, out.append('@'), fileName, "COMPARE_RETURN_").newLine();
+        out.line("D=A");
+        out.line(switch (compCommand) {
+            case EQ -> "@$$COMPARE_EQ";
+            case GT -> "@$$COMPARE_GT";
+            default -> "@$$COMPARE_LT";
+        });
+        out.line("0;JMP");
+        appendCompareLabel(context, out.append('('), fileName, "COMPARE_RETURN_").append(')').newLine();
+
+        context.labelId++;
+        context.savedInstructions += INLINE_COMPARE_SIZE - COMPACT_COMPARE_SIZE;
+    }
+
+    private AssemblyBuffer appendCompareLabel(TranslationContext context, AssemblyBuffer out, String fileName, String kind){
+        if(context.isFileScopedLabels()){
+            out.append(fileName).append('$');
+        }
+
+        return out.append(kind).append(context.labelId);
+    }
+
+    private void getValueFromMemorySegment(AssemblyBuffer out, Segment segment){
+        if(segment.isIndirect()){
+            out.line(segment.getBaseAddress());
+            out.line(segment == Segment.TEMP ? "D=D+A" : "D=D+M");
+            out.line("A=D").line("D=M");
+        }
+    }
+
+    private void selectMemorySegment(AssemblyBuffer out, VMInstruction vmCommand, String fileName){
+        Segment segment = vmCommand.getSegment();
+
+        if(segment == Segment.POINTER){
+            out.line(vmCommand.getIndex() == 0 ? "@THIS" : "@THAT");
+        } else if(segment == Segment.STATIC){
+            out.append('@').append(fileName).append('.').append(vmCommand.getIndex()).newLine();
+        } else {
+            out.address(vmCommand.getIndex());
+        }
+
+        out.line(segment == Segment.STATIC || segment == Segment.POINTER ? "D=M" : "D=A");
+    }
+
+    private void pushValueToMemSegment(VMInstruction vmCommand, AssemblyBuffer out){
+        if(vmCommand.getSegment() == Segment.POINTER){
+            out.line(vmCommand.getIndex() == 0 ? "@THIS" : "@THAT");
+        } else {
+            out.line("@R13").line("A=M");
+        }
+
+        out.line("M=D");
+    }
+
+    private void getProperMemorySegment(VMInstruction vmCommand, AssemblyBuffer out, String fileName){
+        Segment segment = vmCommand.getSegment();
+
+        if(segment == Segment.POINTER){
+            return;
+        }
+
+        if(segment == Segment.STATIC){
+            out.append('@').append(fileName).append('.').append(vmCommand.getIndex()).newLine();
+            out.line("D=A");
+        } else {
+            out.address(vmCommand.getIndex());
+            out.line("D=A");
+            out.line(segment.getBaseAddress());
+            out.line(segment == Segment.TEMP ? "D=D+A" : "D=D+M");
+        }
+
+        out.line("@R13").line("M=D");
+    }
+
+    private String getOperation(Opcode arthCommand){
+        return switch (arthCommand) {
+            case ADD -> "D=D+M";
+            case SUB -> "D=M-D";
+            case AND -> "D=D&M";
+            default -> "D=D|M";
+        };
+    }
+
+    private String getJumpInstr(Opcode logCommand){
+        return switch (logCommand) {
+            case EQ -> "D;JEQ";
+            case GT -> "D;JLT";
+            default -> "D;JGT";
+        };
+    }
+
+    private static String compareRoutine(String name, String jump){
+        return lines("(" + name + ")", "@R15", "M=D", "@SP", "AM=M-1", "D=M", "A=A-1", "D=M-D",
+                "@$$COMPARE_TRUE", jump, "@$$COMPARE_FALSE", "0;JMP");
+    }
+
+    private static int countInstructions(String assembly){
+        int count = 0;
+
+        for(String line : assembly.split(LINE_SEPARATOR)){
+            if(!line.isEmpty() && !line.startsWith("//") && !line.startsWith("(")){
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    private static String lines(String... instructions){
+        StringBuilder joined = new StringBuilder();
+
+        for(String instruction : instructions){
+            joined.append(instruction).append(LINE_SEPARATOR);
+        }
+
+        return joined.toString();
+    }
+}
@@ -1,425 +1,137 @@
 package me.bilousov.translator;
 
+import me.bilousov.instruction.SymbolTable;
+import me.bilousov.instruction.VMInstruction;
+import me.bilousov.optimizer.VMCodeOptimizer;
+import me.bilousov.parser.VMInstructionHandler;
+import me.bilousov.parser.VMInstructionParser;
+
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
 
+// one program at a time: a CodeGenerator bound to a single TranslationContext
 public class CodeTranslator {
 
-    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
-    private static final String A_REGISTER = "A";
-    private static final String M_REGISTER = "M";
-
-    private Map<String, String> memoryMapping;
-    private int labelId;
-    private int returnAddressId = 0;
-
-    private boolean firstCall = true;
+    private final CodeGenerator generator;
+    private final TranslationContext context;
+    private final VMInstructionParser instructionParser;
 
     public CodeTranslator() {
-        labelId = 0;
-        memoryMapping = new HashMap<>();
-        memoryMapping.put("local", "@LCL");
-        memoryMapping.put("argument", "@ARG");
-        memoryMapping.put("this", "@THIS");
-        memoryMapping.put("that", "@THAT");
-        memoryMapping.put("temp", "@5");
+        this(new SymbolTable());
     }
 
-    public List<String> translateCodeToAssembly(List<String> vmCodeLines, String fileName){
-        System.out.println("translateCodeToAssembly with fileName: " + fileName);
-        List<String> translated = new ArrayList<>();
-
-        if (firstCall){
-            addBootstrapCode(translated);
-            firstCall = false;
-        }
-
-        for (String line : vmCodeLines){
-            translated.add(translateLine(line, fileName));
-        }
-
-        return translated;
+    public CodeTranslator(SymbolTable symbolTable) {
+        this(symbolTable, false);
     }
 
-    private String translateLine(String codeLine, String fileName){
-        String[] commandParts = codeLine.split(" ");
-        StringBuilder instructions = new StringBuilder();
-        instructions.append("// ").append(codeLine).append(LINE_SEPARATOR);
-        instructions.append("@22222").append(LINE_SEPARATOR);
-
-        return switch (commandParts[0]) {
-            case "push" -> translatePushCommand(instructions, commandParts, fileName);
-            case "pop" -> translatePopCommand(instructions, commandParts, fileName);
-            case "add", "sub", "or", "and" -> translateArthCommWithTwoOperands(instructions, codeLine);
-            case "neg", "not" -> translateLogicalCommand(instructions, codeLine);
-            case "label" -> translateLabelCommand(instructions, codeLine);
-            case "goto" -> translateGotoCommand(instructions, codeLine);
-            case "if-goto" -> translateIfGotoCommand(instructions, codeLine);
-            case "call" -> translateCallCommand(instructions, codeLine, fileName);
-            case "function" -> translateFunctionCommand(instructions, codeLine, fileName);
-            case "return" -> translateReturnCommand(instructions);
-            default -> translateCompareCommand(instructions, codeLine);
-        };
+    public CodeTranslator(SymbolTable symbolTable, boolean fileScopedLabels) {
+        this(symbolTable, fileScopedLabels, TranslatorOptions.DEFAULT);
     }
 
-    private void addBootstrapCode(List<String> instructions){
-        StringBuilder bootstrapCode = new StringBuilder();
-
-        bootstrapCode.append("// bootstrap code").append(LINE_SEPARATOR);
-        bootstrapCode.append("@256").append(LINE_SEPARATOR);
-        bootstrapCode.append("D=A").append(LINE_SEPARATOR);
-        bootstrapCode.append("@SP").append(LINE_SEPARATOR);
-        bootstrapCode.append("M=D").append(LINE_SEPARATOR);
-        translateCallCommand(bootstrapCode, "call Sys.init 0", "Sys.vm");
-
-        instructions.add(bootstrapCode.toString());
+    public CodeTranslator(SymbolTable symbolTable, boolean fileScopedLabels, TranslatorOptions options) {
+        this(new CodeGenerator(options), new TranslationContext(symbolTable, fileScopedLabels));
     }
 
-    private String translatePushCommand(StringBuilder instructions, String[] commandParts, String fileName){
-        selectMemorySegment(instructions, commandParts, fileName);
-        getValueFromMemorySegment(instructions, commandParts);
-
-        pushValueToStack(instructions);
-        increaseStackPointer(instructions);
-
-        return instructions.toString();
+    public CodeTranslator(CodeGenerator generator, TranslationContext context) {
+        this.generator = generator;
+        this.context = context;
+        this.instructionParser = new VMInstructionParser(context.getSymbolTable());
     }
 
-    private String translatePopCommand(StringBuilder instructions, String[] commandParts, String fileName){
-        getProperMemorySegment(commandParts, instructions, fileName);
-        decreaseStackPointer(instructions);
-        pushValueToMemSegment(commandParts, instructions);
-
-        return instructions.toString();
+    public long getSavedInstructionCount(){
+        return context.getSavedInstructionCount();
     }
 
-    private String translateArthCommWithTwoOperands(StringBuilder instructions, String arthCommand){
-        instructions.append("@SP").append(LINE_SEPARATOR);
-        instructions.append("A=M").append(LINE_SEPARATOR);
-        instructions.append("A=A-1").append(LINE_SEPARATOR);
-        instructions.append("D=M").append(LINE_SEPARATOR);
-        instructions.append("@SP").append(LINE_SEPARATOR);
-        instructions.append("A=M").append(LINE_SEPARATOR);
-        instructions.append("A=A-1").append(LINE_SEPARATOR);
-        instructions.append("A=A-1").append(LINE_SEPARATOR);
-        instructions.append(arthCommand.equals("sub")? "D=M-D" : "D=D" + getOperator(arthCommand) + "M").append(LINE_SEPARATOR);
-        instructions.append("M=D").append(LINE_SEPARATOR);
-        instructions.append("@SP").append(LINE_SEPARATOR);
-        instructions.append("M=M-1").append(LINE_SEPARATOR);
-
-        return instructions.toString();
+    public long getDebugMarkerCost(){
+        return context.getDebugMarkerCost();
     }
 
-    private String translateLogicalCommand(StringBuilder instructions, String logCommand){
-        instructions.append("@SP").append(LINE_SEPARATOR);
-        instructions.append("A=M").append(LINE_SEPARATOR);
-        instructions.append("A=A-1").append(LINE_SEPARATOR);
-        instructions.append("M=" + (logCommand.equals("neg")? "-" : "!") + "M").append(LINE_SEPARATOR);
-
-        return instructions.toString();
-    }
-
-    private String translateLabelCommand(StringBuilder instructions, String labelCommand){
-        instructions.append("(" + labelCommand.split(" ")[1] + ")").append(LINE_SEPARATOR);
-
-        return instructions.toString();
-    }
-
-    private String translateGotoCommand(StringBuilder instructions, String gotoCommand){
-        instructions.append("@").append(gotoCommand.split(" ")[1]).append(LINE_SEPARATOR);
-        instructions.append("0;JMP").append(LINE_SEPARATOR);
-
-        return instructions.toString();
-    }
-
-    private String translateIfGotoCommand(StringBuilder instructions, String ifGotoCommand){
-        decreaseStackPointer(instructions);
-        instructions.append("D=M").append(LINE_SEPARATOR);
-        instructions.append("@" + ifGotoCommand.split(" ")[1]).append(LINE_SEPARATOR);
-        instructions.append("D;JNE").append(LINE_SEPARATOR);
-
-        return instructions.toString();
-    }
+    public List<String> translateCodeToAssembly(List<String> vmCodeLines, String fileName){
+        List<VMInstruction> vmInstructions = new ArrayList<>(vmCodeLines.size());
+        instructionParser.startFile();
 
-    private String translateCallCommand(StringBuilder instructions, String callCommand, String fileName){
-        String returnLabel = fileName + "$ret." + returnAddressId++;
-        // push return address
-        instructions.append("@" + returnLabel).append(LINE_SEPARATOR);
-        instructions.append("D=A").append(LINE_SEPARATOR);
-        instructions.append("@SP").append(LINE_SEPARATOR);
-        instructions.append("A=M").append(LINE_SEPARATOR);
-        instructions.append("M=D").append(LINE_SEPARATOR);
-        instructions.append("@SP").append(LINE_SEPARATOR);
-        instructions.append("M=M+1").append(LINE_SEPARATOR);
-        // push segments of a caller
-        pushSegmentToStack(instructions, "LCL");
-        pushSegmentToStack(instructions, "ARG");
-        pushSegmentToStack(instructions, "THIS");
-        pushSegmentToStack(instructions, "THAT");
-
-        repositArgSegment(instructions, 5 + Integer.parseInt(callCommand.split(" ")[2]));
-        // change LCL segment for new called func
-        instructions.append("@SP").append(LINE_SEPARATOR);
-        instructions.append("D=M").append(LINE_SEPARATOR);
-        instructions.append("@LCL").append(LINE_SEPARATOR);
-        instructions.append("M=D").append(LINE_SEPARATOR);
-        // goto called func
-        instructions.append("@" + callCommand.split(" ")[1]).append(LINE_SEPARATOR);
-        instructions.append("0;JMP").append(LINE_SEPARATOR);
-        // insert return label
-        instructions.append("(" + returnLabel + ")").append(LINE_SEPARATOR);
-
-        return instructions.toString();
-    }
+        for (String line : vmCodeLines){
+            vmInstructions.add(instructionParser.parse(line));
+        }
 
-    private void pushSegmentToStack(StringBuilder prevCommands, String segment){
-        prevCommands.append("@" + segment).append(LINE_SEPARATOR);
-        prevCommands.append("D=M").append(LINE_SEPARATOR);
-        prevCommands.append("@SP").append(LINE_SEPARATOR);
-        prevCommands.append("A=M").append(LINE_SEPARATOR);
-        prevCommands.append("M=D").append(LINE_SEPARATOR);
-        prevCommands.append("@SP").append(LINE_SEPARATOR);
-        prevCommands.append("M=M+1").append(LINE_SEPARATOR);
+        return translateInstructionsToAssembly(vmInstructions, fileName);
     }
 
-    private void repositArgSegment(StringBuilder prevCommands, int changeOn){
-        prevCommands.append("@SP").append(LINE_SEPARATOR);
-        prevCommands.append("D=M").append(LINE_SEPARATOR);
-        prevCommands.append("@" + changeOn).append(LINE_SEPARATOR);
-        prevCommands.append("D=D-A").append(LINE_SEPARATOR);
-        prevCommands.append("@ARG").append(LINE_SEPARATOR);
-        prevCommands.append("M=D").append(LINE_SEPARATOR);
-    }
+    public List<String> translateInstructionsToAssembly(List<VMInstruction> vmInstructions, String fileName){
+        List<String> translated = new ArrayList<>();
 
-    private String translateFunctionCommand(StringBuilder instructions, String functionCommand, String fileName){
-        // generate label to which PC will jump
-        // instructions.append("(" + fileName + "." + functionCommand.split(" ")[1] + ")").append(LINE_SEPARATOR);
-        instructions.append("(" + functionCommand.split(" ")[1] + ")").append(LINE_SEPARATOR);
-        // generate local segment
-        for(int i = 0; i< Integer.parseInt(functionCommand.split(" ")[2]); i++){
-            instructions.append("@0").append(LINE_SEPARATOR);
-            instructions.append("D=A").append(LINE_SEPARATOR);
-            instructions.append("@SP").append(LINE_SEPARATOR);
-            instructions.append("A=M").append(LINE_SEPARATOR);
-            instructions.append("M=D").append(LINE_SEPARATOR);
-            increaseStackPointer(instructions);
+        if (context.isBootstrapPending()){
+            translated.add(getBootstrapCode());
         }
 
+        Set<VMOptimization> optimizations = generator.getOptions().getVMOptimizations();
 
-        return instructions.toString();
-    }
-
-    private String translateReturnCommand(StringBuilder instructions){
-        // save LCL pointer to temp variable
-        instructions.append("@LCL").append(LINE_SEPARATOR);
-        instructions.append("D=M").append(LINE_SEPARATOR);
-        instructions.append("@endFrame").append(LINE_SEPARATOR);
-        instructions.append("M=D").append(LINE_SEPARATOR);
-
-        // get the return address
-        instructions.append("@endFrame").append(LINE_SEPARATOR);
-        instructions.append("D=M").append(LINE_SEPARATOR);
-        instructions.append("@5").append(LINE_SEPARATOR);
-        instructions.append("D=D-A").append(LINE_SEPARATOR);
-        instructions.append("A=D").append(LINE_SEPARATOR);
-        instructions.append("D=M").append(LINE_SEPARATOR);
-        instructions.append("@returnAddress").append(LINE_SEPARATOR);
-        instructions.append("M=D").append(LINE_SEPARATOR);
-
-        // place return value to ARG 0
-        instructions.append("@0").append(LINE_SEPARATOR);
-        instructions.append("D=A").append(LINE_SEPARATOR);
-        instructions.append("@ARG").append(LINE_SEPARATOR);
-        instructions.append("D=D+M").append(LINE_SEPARATOR);
-        instructions.append("@R13").append(LINE_SEPARATOR);
-        instructions.append("M=D").append(LINE_SEPARATOR);
-        instructions.append("@SP").append(LINE_SEPARATOR);
-        instructions.append("M=M-1").append(LINE_SEPARATOR);
-        instructions.append("A=M").append(LINE_SEPARATOR);
-        instructions.append("D=M").append(LINE_SEPARATOR);
-        instructions.append("@R13").append(LINE_SEPARATOR);
-        instructions.append("A=M").append(LINE_SEPARATOR);
-        instructions.append("M=D").append(LINE_SEPARATOR);
-
-        // place stack pointer after return value
-        instructions.append("@ARG").append(LINE_SEPARATOR);
-        instructions.append("D=M").append(LINE_SEPARATOR);
-        instructions.append("@SP").append(LINE_SEPARATOR);
-        instructions.append("M=D").append(LINE_SEPARATOR);
-        increaseStackPointer(instructions);
-
-        // recover the callers segments
-        instructions.append("@endFrame").append(LINE_SEPARATOR);
-        instructions.append("D=M").append(LINE_SEPARATOR);
-        instructions.append("@1").append(LINE_SEPARATOR);
-        instructions.append("D=D-A").append(LINE_SEPARATOR);
-        instructions.append("A=D").append(LINE_SEPARATOR);
-        instructions.append("D=M").append(LINE_SEPARATOR);
-        instructions.append("@THAT").append(LINE_SEPARATOR);
-        instructions.append("M=D").append(LINE_SEPARATOR);
-
-        instructions.append("@endFrame").append(LINE_SEPARATOR);
-        instructions.append("D=M").append(LINE_SEPARATOR);
-        instructions.append("@2").append(LINE_SEPARATOR);
-        instructions.append("D=D-A").append(LINE_SEPARATOR);
-        instructions.append("A=D").append(LINE_SEPARATOR);
-        instructions.append("D=M").append(LINE_SEPARATOR);
-        instructions.append("@THIS").append(LINE_SEPARATOR);
-        instructions.append("M=D").append(LINE_SEPARATOR);
-
-        instructions.append("@endFrame").append(LINE_SEPARATOR);
-        instructions.append("D=M").append(LINE_SEPARATOR);
-        instructions.append("@3").append(LINE_SEPARATOR);
-        instructions.append("D=D-A").append(LINE_SEPARATOR);
-        instructions.append("A=D").append(LINE_SEPARATOR);
-        instructions.append("D=M").append(LINE_SEPARATOR);
-        instructions.append("@ARG").append(LINE_SEPARATOR);
-        instructions.append("M=D").append(LINE_SEPARATOR);
-
-        instructions.append("@endFrame").append(LINE_SEPARATOR);
-        instructions.append("D=M").append(LINE_SEPARATOR);
-        instructions.append("@4").append(LINE_SEPARATOR);
-        instructions.append("D=D-A").append(LINE_SEPARATOR);
-        instructions.append("A=D").append(LINE_SEPARATOR);
-        instructions.append("D=M").append(LINE_SEPARATOR);
-        instructions.append("@LCL").append(LINE_SEPARATOR);
-        instructions.append("M=D").append(LINE_SEPARATOR);
-
-        // jump to return address
-        instructions.append("@returnAddress").append(LINE_SEPARATOR);
-        instructions.append("A=M").append(LINE_SEPARATOR);
-        instructions.append("0;JMP").append(LINE_SEPARATOR);
-
-        return instructions.toString();
-    }
-
-    private String translateCompareCommand(StringBuilder instructions, String compCommand){
-        instructions.append("@SP").append(LINE_SEPARATOR);
-        instructions.append("A=M").append(LINE_SEPARATOR);
-        instructions.append("A=A-1").append(LINE_SEPARATOR);
-        instructions.append("D=M").append(LINE_SEPARATOR);
-        instructions.append("@SP").append(LINE_SEPARATOR);
-        instructions.append("A=M").append(LINE_SEPARATOR);
-        instructions.append("A=A-1").append(LINE_SEPARATOR);
-        instructions.append("A=A-1").append(LINE_SEPARATOR);
-        instructions.append("D=D-M").append(LINE_SEPARATOR);
-        instructions.append("@POS_RESULT_" + labelId).append(LINE_SEPARATOR);
-        instructions.append("D;" + getJumpInstr(compCommand)).append(LINE_SEPARATOR);
-        instructions.append("@SP").append(LINE_SEPARATOR);
-        instructions.append("A=M").append(LINE_SEPARATOR);
-        instructions.append("A=A-1").append(LINE_SEPARATOR);
-        instructions.append("A=A-1").append(LINE_SEPARATOR);
-        instructions.append("M=0").append(LINE_SEPARATOR);
-        instructions.append("@NEG_RESULT_" + labelId).append(LINE_SEPARATOR);
-        instructions.append("0;JMP").append(LINE_SEPARATOR);
-        instructions.append("(POS_RESULT_" + labelId + ")").append(LINE_SEPARATOR);
-        instructions.append("@SP").append(LINE_SEPARATOR);
-        instructions.append("@SP").append(LINE_SEPARATOR);
-        instructions.append("A=M").append(LINE_SEPARATOR);
-        instructions.append("A=A-1").append(LINE_SEPARATOR);
-        instructions.append("A=A-1").append(LINE_SEPARATOR);
-        instructions.append("M=-1").append(LINE_SEPARATOR);
-        instructions.append("(NEG_RESULT_" + labelId + ")").append(LINE_SEPARATOR);
-        instructions.append("@SP").append(LINE_SEPARATOR);
-        instructions.append("M=M-1").append(LINE_SEPARATOR);
-
-        labelId++;
-
-        return instructions.toString();
-    }
-
-    private void getValueFromMemorySegment(StringBuilder prevCommands, String[] commandParts){
-        if(!commandParts[1].equals("constant") && !commandParts[1].equals("static") && !commandParts[1].equals("pointer")){
-            prevCommands.append(memoryMapping.get(commandParts[1])).append(LINE_SEPARATOR);
-            prevCommands.append("D=D+" + getProperMemoryValue(commandParts[1])).append(LINE_SEPARATOR);
-            prevCommands.append("A=D").append(LINE_SEPARATOR);
-            prevCommands.append("D=M").append(LINE_SEPARATOR);
+        if (optimizations.isEmpty()){
+            for (VMInstruction instruction : vmInstructions){
+                translated.add(translateLine(instruction, fileName));
+            }
+        } else {
+            VMInstructionHandler translation = instruction -> translated.add(translateLine(instruction, fileName));
+            optimizeInstructions(vmInstructions, new VMCodeOptimizer(optimizations, translation));
         }
-    }
 
-    private String getProperMemoryValue(String memorySegment){
-        if(memorySegment.equals("temp")){
-            return A_REGISTER;
+        AssemblyBuffer buffer = context.getBuffer();
+        buffer.clear();
+        generator.finishFile(context, buffer);
+
+        if (buffer.length() > 0){
+            translated.add(buffer.toString());
         }
 
-        return M_REGISTER;
+        return translated;
     }
 
-    private void selectMemorySegment(StringBuilder prevCommands, String[] vmCommand, String fileName){
-        String memorySegmentSelection = "@";
+    private void optimizeInstructions(List<VMInstruction> vmInstructions, VMCodeOptimizer optimizer){
+        try {
+            for (VMInstruction instruction : vmInstructions){
+                optimizer.handle(instruction);
+            }
 
-        if(vmCommand[1].equals("pointer")){
-            memorySegmentSelection+=vmCommand[2].equals("0")? "THIS" : "THAT";
-        } else {
-            memorySegmentSelection+=(vmCommand[1].equals("static")? fileName + "." : "") + vmCommand[2];
+            optimizer.flush();
+        } catch (IOException e) {
+            // the handler only collects strings
+            throw new IllegalStateException(e);
         }
 
-        prevCommands.append(memorySegmentSelection).append(LINE_SEPARATOR);
-        prevCommands.append("D=" + (vmCommand[1].equals("static") || vmCommand[1].equals("pointer")? M_REGISTER : A_REGISTER)).append(LINE_SEPARATOR);
+        context.addRemovedVMCommands(optimizer.getRemovedInstructionCount());
     }
 
-    private void pushValueToStack(StringBuilder prevCommands){
-        prevCommands.append("@SP").append(LINE_SEPARATOR);
-        prevCommands.append("A=M").append(LINE_SEPARATOR);
-        prevCommands.append("M=D").append(LINE_SEPARATOR);
+    public void translateInstruction(VMInstruction instruction, String fileName, AssemblySink sink) throws IOException {
+        generator.translateInstruction(context, instruction, fileName, sink);
     }
 
-    private void increaseStackPointer(StringBuilder prevCommands){
-        prevCommands.append("@SP").append(LINE_SEPARATOR);;
-        prevCommands.append("M=M+1").append(LINE_SEPARATOR);;
+    public void finishFile(AssemblySink sink) throws IOException {
+        generator.finishFile(context, sink);
     }
 
-    private void decreaseStackPointer(StringBuilder prevCommands){
-        prevCommands.append("@SP").append(LINE_SEPARATOR);
-        prevCommands.append("M=M-1").append(LINE_SEPARATOR);
-        prevCommands.append("A=M").append(LINE_SEPARATOR);
-        prevCommands.append("D=M").append(LINE_SEPARATOR);
+    public boolean isBootstrapPending(){
+        return context.isBootstrapPending();
     }
 
-    private void pushValueToMemSegment(String[] commandParts, StringBuilder prevCommands){
-        if(commandParts[1].equals("pointer")){
-            prevCommands.append(commandParts[2].equals("0") ? "@THIS" : "@THAT").append(LINE_SEPARATOR);
-        } else {
-            prevCommands.append("@R13").append(LINE_SEPARATOR);
-            prevCommands.append("A=M").append(LINE_SEPARATOR);
-        }
-
-        prevCommands.append("M=D").append(LINE_SEPARATOR);
+    public String getBootstrapCode(){
+        return generator.getBootstrapCode(context);
     }
 
-    private void getProperMemorySegment(String[] commandParts, StringBuilder prevCommands, String fileName){
-        if(commandParts[1].equals("pointer")){
-            return;
-        }
-
-        prevCommands.append("@" + (commandParts[1].equals("static")? fileName + "." : "") + commandParts[2]).append(LINE_SEPARATOR);
-        prevCommands.append("D=A").append(LINE_SEPARATOR);
-
-        if(!commandParts[1].equals("static")){
-            prevCommands.append(memoryMapping.get(commandParts[1])).append(LINE_SEPARATOR);
-            prevCommands.append("D=D+" + getProperMemoryValue(commandParts[1])).append(LINE_SEPARATOR);
-        }
-
-        prevCommands.append("@R13").append(LINE_SEPARATOR);
-        prevCommands.append("M=D").append(LINE_SEPARATOR);
+    public void translateBootstrapCode(AssemblyBuffer out){
+        generator.translateBootstrapCode(context, out);
     }
 
-    private String getOperator(String arthCommand){
-        return switch (arthCommand.split(" ")[0].trim()) {
-            case "add" -> "+";
-            case "sub" -> "-";
-            case "and" -> "&";
-            default -> "|";
-        };
+    public void translateInstruction(VMInstruction instruction, String fileName, AssemblyBuffer out){
+        generator.translateInstruction(context, instruction, fileName, out);
     }
 
-    private String getJumpInstr(String logCommand){
-        return switch (logCommand) {
-            case "eq" -> "JEQ";
-            case "gt" -> "JLT";
-            default -> "JGT";
-        };
+    private String translateLine(VMInstruction instruction, String fileName){
+        AssemblyBuffer buffer = context.getBuffer();
+        buffer.clear();
+        translateInstruction(instruction, fileName, buffer);
+
+        return buffer.toString();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,19 @@
+package me.bilousov.translator;
+
+// optional @id instruction emitted after the comment of every VM command, to locate it while debugging
+public enum DebugMarkers {
+
+    // release output, no markers
+    NONE,
+    // the same @22222 marker for every command
+    FIXED,
+    // sequence number of the VM command within the translated program
+    SOURCE_LINE,
+    // sequence number of the enclosing function
+    FUNCTION;
+
+    // the ids count across the whole program, so the files have to be translated in order
+    public boolean isNumbered(){
+        return this == SOURCE_LINE || this == FUNCTION;
+    }
+}
@@ -0,0 +1,227 @@
+package me.bilousov.translator;
+
+import me.bilousov.instruction.ProgramSymbolTable;
+import me.bilousov.instruction.SymbolTable;
+import me.bilousov.metrics.TranslationListener;
+
+// everything one program translation mutates: its symbols, the generated label counters and the
+// statistics. Not thread safe, the parallel translation gives every file its own context and merges
+// them back. reset() prepares a context for the next program so contexts can be pooled.
+public class TranslationContext {
+
+    private final SymbolTable symbolTable;
+    private final boolean fileScopedLabels;
+    private final TranslationListener listener;
+    private final AssemblyBuffer buffer = new AssemblyBuffer();
+
+    // advanced by CodeGenerator
+    int labelId;
+    int returnAddressId;
+    long savedInstructions;
+    long translatedCommands;
+    int functionId;
+    // number of the first command and function of this context, so file contexts continue the
+    // debug marker ids of the files merged before them
+    long firstCommand;
+    int firstFunction;
+    boolean bootstrapPending;
+    // register stack top mode: the top of the stack is held in D and not yet written to RAM
+    boolean stackTopInD;
+
+    private int translatedFunctions;
+    private long removedFunctions;
+    private long removedFunctionInstructions;
+    private long removedVMCommands;
+    private int functionCount;
+    private int inlinedCalls;
+    private int inlinedInstructions;
+    private int inlinedFunctions;
+    private ProgramSymbolTable programSymbols;
+    private long cacheHits;
+    private long cacheMisses;
+
+    public TranslationContext() {
+        this((TranslationListener) null);
+    }
+
+    public TranslationContext(TranslationListener listener) {
+        this(new SymbolTable(), false, listener);
+    }
+
+    // file scoped contexts prefix generated labels with the file name and leave the
+    // bootstrap code to the caller, so each file can be translated independently
+    public TranslationContext(SymbolTable symbolTable, boolean fileScopedLabels) {
+        this(symbolTable, fileScopedLabels, null);
+    }
+
+    private TranslationContext(SymbolTable symbolTable, boolean fileScopedLabels, TranslationListener listener) {
+        this.symbolTable = symbolTable;
+        this.fileScopedLabels = fileScopedLabels;
+        this.listener = listener;
+        resetState();
+    }
+
+    // the marker ids of the new context follow everything merged so far, they only match the order of
+    // the output when every file is merged before the next one is started
+    public synchronized TranslationContext newFileContext(){
+        TranslationContext fileContext = new TranslationContext(new SymbolTable(), true, listener);
+        fileContext.firstCommand = firstCommand + translatedCommands;
+        fileContext.firstFunction = firstFunction + getTranslatedFunctionCount();
+
+        return fileContext;
+    }
+
+    public void reset(){
+        symbolTable.clear();
+        resetState();
+    }
+
+    // the symbol table is left alone, it may already hold the symbols of parsed instructions
+    private void resetState(){
+        buffer.clear();
+        labelId = 0;
+        returnAddressId = 0;
+        savedInstructions = 0;
+        translatedCommands = 0;
+        functionId = -1;
+        firstCommand = 0;
+        firstFunction = 0;
+        translatedFunctions = 0;
+        bootstrapPending = !fileScopedLabels;
+        stackTopInD = false;
+        removedFunctions = 0;
+        removedFunctionInstructions = 0;
+        removedVMCommands = 0;
+        functionCount = 0;
+        inlinedCalls = 0;
+        inlinedInstructions = 0;
+        inlinedFunctions = 0;
+        programSymbols = null;
+        cacheHits = 0;
+        cacheMisses = 0;
+    }
+
+    public SymbolTable getSymbolTable(){
+        return symbolTable;
+    }
+
+    public boolean isFileScopedLabels(){
+        return fileScopedLabels;
+    }
+
+    // null when nothing is measured
+    public TranslationListener getListener(){
+        return listener;
+    }
+
+    public boolean isBootstrapPending(){
+        return bootstrapPending;
+    }
+
+    AssemblyBuffer getBuffer(){
+        return buffer;
+    }
+
+    // instructions the compact mode saved compared to inlining every call, return and compare
+    public synchronized long getSavedInstructionCount(){
+        return savedInstructions;
+    }
+
+    // ROM words taken by debug markers, or that they would take if they were enabled
+    public synchronized long getDebugMarkerCost(){
+        return translatedCommands;
+    }
+
+    // function commands translated, or loaded from the cache
+    public synchronized int getTranslatedFunctionCount(){
+        return translatedFunctions + functionId + 1;
+    }
+
+    public synchronized long getRemovedFunctionCount(){
+        return removedFunctions;
+    }
+
+    public synchronized long getRemovedFunctionInstructionCount(){
+        return removedFunctionInstructions;
+    }
+
+    // VM commands folded or fused away by the VM optimizer
+    public synchronized long getRemovedVMCommandCount(){
+        return removedVMCommands;
+    }
+
+    public synchronized int getFunctionCount(){
+        return functionCount;
+    }
+
+    public synchronized int getInlinedCallCount(){
+        return inlinedCalls;
+    }
+
+    // VM commands the inlined bodies added over the calls they replaced
+    public synchronized int getInlinedInstructionCount(){
+        return inlinedInstructions;
+    }
+
+    // functions removed because every call to them was inlined
+    public synchronized int getInlinedFunctionCount(){
+        return inlinedFunctions;
+    }
+
+    // null unless the program was read in a first pass
+    public synchronized ProgramSymbolTable getProgramSymbols(){
+        return programSymbols;
+    }
+
+    public synchronized long getCacheHitCount(){
+        return cacheHits;
+    }
+
+    public synchronized long getCacheMissCount(){
+        return cacheMisses;
+    }
+
+    public synchronized void setFunctionCount(int functionCount){
+        this.functionCount = functionCount;
+    }
+
+    public synchronized void setInlinedCalls(int calls, int addedInstructions, int uncalledFunctions){
+        inlinedCalls = calls;
+        inlinedInstructions = addedInstructions;
+        inlinedFunctions = uncalledFunctions;
+    }
+
+    public synchronized void setProgramSymbols(ProgramSymbolTable programSymbols){
+        this.programSymbols = programSymbols;
+    }
+
+    public synchronized void addRemovedFunctions(long functions, long instructions){
+        removedFunctions += functions;
+        removedFunctionInstructions += instructions;
+    }
+
+    public synchronized void addRemovedVMCommands(long commands){
+        removedVMCommands += commands;
+    }
+
+    public synchronized void addCacheHit(long savedInstructions, long debugMarkerCost, int translatedFunctions){
+        cacheHits++;
+        this.savedInstructions += savedInstructions;
+        this.translatedCommands += debugMarkerCost;
+        this.translatedFunctions += translatedFunctions;
+    }
+
+    public synchronized void addCacheMiss(){
+        cacheMisses++;
+    }
+
+    // called from the worker threads once their file is done
+    public synchronized void merge(TranslationContext fileContext){
+        savedInstructions += fileContext.getSavedInstructionCount();
+        translatedCommands += fileContext.getDebugMarkerCost();
+        translatedFunctions += fileContext.getTranslatedFunctionCount();
+        removedFunctions += fileContext.getRemovedFunctionCount();
+        removedFunctionInstructions += fileContext.getRemovedFunctionInstructionCount();
+        removedVMCommands += fileContext.getRemovedVMCommandCount();
+    }
+}
@@ -0,0 +1,121 @@
+package me.bilousov.translator;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+public final class TranslatorOptions {
+
+    public static final TranslatorOptions DEFAULT = new TranslatorOptions(false, DebugMarkers.NONE, false, false,
+            EnumSet.noneOf(VMOptimization.class), 0, 0, false);
+
+    private final boolean compactCode;
+    private final DebugMarkers debugMarkers;
+    private final boolean deadFunctionElimination;
+    private final boolean registerStackTop;
+    private final Set<VMOptimization> vmOptimizations;
+    private final int inlineThreshold;
+    private final int inlineBudget;
+    private final boolean programSymbols;
+
+    private TranslatorOptions(boolean compactCode, DebugMarkers debugMarkers, boolean deadFunctionElimination,
+                              boolean registerStackTop, Set<VMOptimization> vmOptimizations, int inlineThreshold,
+                              int inlineBudget, boolean programSymbols) {
+        this.compactCode = compactCode;
+        this.debugMarkers = debugMarkers;
+        this.deadFunctionElimination = deadFunctionElimination;
+        this.registerStackTop = registerStackTop;
+        this.vmOptimizations = vmOptimizations;
+        this.inlineThreshold = inlineThreshold;
+        this.inlineBudget = inlineBudget;
+        this.programSymbols = programSymbols;
+    }
+
+    // call, return and compare commands jump to shared routines emitted with the bootstrap code
+    public boolean isCompactCode(){
+        return compactCode;
+    }
+
+    public DebugMarkers getDebugMarkers(){
+        return debugMarkers;
+    }
+
+    // functions not reachable from Sys.init through the call graph are not translated
+    public boolean isDeadFunctionElimination(){
+        return deadFunctionElimination;
+    }
+
+    // the top of the stack stays in D between stack commands and is only written back at labels, jumps,
+    // calls, returns and the end of every file
+    public boolean isRegisterStackTop(){
+        return registerStackTop;
+    }
+
+    // unmodifiable, empty when the VM commands are translated as written
+    public Set<VMOptimization> getVMOptimizations(){
+        return vmOptimizations;
+    }
+
+    // leaf functions with at most this many VM commands are inlined at their call sites, 0 disables inlining
+    public int getInlineThreshold(){
+        return inlineThreshold;
+    }
+
+    // VM commands the inlined bodies may add to the whole program
+    public int getInlineBudget(){
+        return inlineBudget;
+    }
+
+    // the program is read in a first pass to check its functions and labels and to lay out its statics,
+    // dead function elimination and inlining make that pass anyway
+    public boolean isProgramSymbols(){
+        return programSymbols;
+    }
+
+    public TranslatorOptions withCompactCode(boolean compactCode){
+        return new TranslatorOptions(compactCode, debugMarkers, deadFunctionElimination, registerStackTop, vmOptimizations,
+                inlineThreshold, inlineBudget, programSymbols);
+    }
+
+    public TranslatorOptions withDebugMarkers(DebugMarkers debugMarkers){
+        return new TranslatorOptions(compactCode, debugMarkers, deadFunctionElimination, registerStackTop, vmOptimizations,
+                inlineThreshold, inlineBudget, programSymbols);
+    }
+
+    public TranslatorOptions withDeadFunctionElimination(boolean deadFunctionElimination){
+        return new TranslatorOptions(compactCode, debugMarkers, deadFunctionElimination, registerStackTop, vmOptimizations,
+                inlineThreshold, inlineBudget, programSymbols);
+    }
+
+    public TranslatorOptions withRegisterStackTop(boolean registerStackTop){
+        return new TranslatorOptions(compactCode, debugMarkers, deadFunctionElimination, registerStackTop, vmOptimizations,
+                inlineThreshold, inlineBudget, programSymbols);
+    }
+
+    public TranslatorOptions withVMOptimizations(Set<VMOptimization> vmOptimizations){
+        Set<VMOptimization> copy = EnumSet.noneOf(VMOptimization.class);
+        copy.addAll(vmOptimizations);
+
+        return new TranslatorOptions(compactCode, debugMarkers, deadFunctionElimination, registerStackTop,
+                Collections.unmodifiableSet(copy), inlineThreshold, inlineBudget,
+                programSymbols);
+    }
+
+    public TranslatorOptions withInlining(int inlineThreshold, int inlineBudget){
+        return new TranslatorOptions(compactCode, debugMarkers, deadFunctionElimination, registerStackTop, vmOptimizations,
+                inlineThreshold, inlineBudget, programSymbols);
+    }
+
+    public TranslatorOptions withProgramSymbols(boolean programSymbols){
+        return new TranslatorOptions(compactCode, debugMarkers, deadFunctionElimination, registerStackTop, vmOptimizations,
+                inlineThreshold, inlineBudget, programSymbols);
+    }
+
+    @Override
+    public String toString(){
+        return "compactCode=" + compactCode + ",debugMarkers=" + debugMarkers
+                + ",deadFunctionElimination=" + deadFunctionElimination + ",registerStackTop=" + registerStackTop
+                + ",vmOptimizations=" + vmOptimizations + ",inlineThreshold=" + inlineThreshold
+                + ",inlineBudget=" + inlineBudget + ",programSymbols=" + programSymbols;
+    }
+}
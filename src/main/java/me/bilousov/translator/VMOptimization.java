@@ -0,0 +1,34 @@
+package me.bilousov.translator;
+
+// rewrites of the VM command stream applied before translation, see optimizer.VMCodeOptimizer
+public enum VMOptimization {
+
+    // push constant a, push constant b, add -> push constant a+b, the same for unary commands and compares
+    CONSTANT_FOLDING("constant-folding"),
+    // push x, pop y -> one move without touching the stack
+    PUSH_POP_MOVES("push-pop-moves"),
+    // not, if-goto -> one jump taken on a false condition
+    NEGATED_JUMPS("negated-jumps");
+
+    private static final VMOptimization[] VALUES = values();
+
+    private final String name;
+
+    VMOptimization(String name) {
+        this.name = name;
+    }
+
+    public String getName(){
+        return name;
+    }
+
+    public static VMOptimization fromName(String name){
+        for(VMOptimization optimization : VALUES){
+            if(optimization.name.equals(name)){
+                return optimization;
+            }
+        }
+
+        throw new IllegalArgumentException("Unknown VM optimization: " + name);
+    }
+}
@@ -0,0 +1,8 @@
+package me.bilousov.writer;
+
+import me.bilousov.translator.AssemblySink;
+
+import java.io.Closeable;
+
+public interface AssemblyFileWriter extends AssemblySink, Closeable {
+}
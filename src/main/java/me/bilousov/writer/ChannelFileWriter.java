@@ -0,0 +1,93 @@
+package me.bilousov.writer;
+
+import me.bilousov.translator.AssemblyBuffer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// encodes assembly as ASCII straight into a direct buffer, every line break is written with the configured separator
+public class ChannelFileWriter implements AssemblyFileWriter {
+
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final byte[] lineSeparator;
+
+    private long bytesWritten;
+
+    ChannelFileWriter(Path outputFilePath, int bufferSize, String lineSeparator) throws IOException {
+        this.channel = FileChannel.open(outputFilePath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        this.buffer = ByteBuffer.allocateDirect(bufferSize);
+        this.lineSeparator = lineSeparator.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    @Override
+    public void write(String assembly) throws IOException {
+        for (int i = 0; i < assembly.length(); i++) {
+            put(assembly.charAt(i));
+        }
+
+        putLineSeparator();
+    }
+
+    @Override
+    public void write(AssemblyBuffer assembly) throws IOException {
+        char[] chars = assembly.getChars();
+
+        for (int i = 0; i < assembly.length(); i++) {
+            put(chars[i]);
+        }
+
+        putLineSeparator();
+    }
+
+    public long getBytesWritten(){
+        return bytesWritten + buffer.position();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void put(char c) throws IOException {
+        if (c == '\n') {
+            putLineSeparator();
+        } else if (c != '\r') {
+            if (!buffer.hasRemaining()) {
+                flush();
+            }
+
+            buffer.put(c < 0x80 ? (byte) c : (byte) '?');
+        }
+    }
+
+    private void putLineSeparator() throws IOException {
+        if (buffer.remaining() < lineSeparator.length) {
+            flush();
+        }
+
+        buffer.put(lineSeparator);
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        bytesWritten += buffer.remaining();
+
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+
+        buffer.clear();
+    }
+}
@@ -1,25 +1,22 @@
 package me.bilousov.writer;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.List;
 
 public class FileWriter {
 
     private static final String INPUT_FILE_EXTENSION = ".vm";
     private static final String OUTPUT_FILE_EXTENSION = ".asm";
+    private static final String HACK_FILE_EXTENSION = ".hack";
+    private static final String HACK_IMAGE_EXTENSION = ".bin";
     private static final String LINE_SEPARATOR = System.getProperty("line.separator");
 
     public static void writeBinaryFileWithLines(List<String> binaryLines, String path) throws IOException {
-        File vmFile = new File(path);
-        String outputFilePath;
-
-        if(vmFile.isDirectory()){
-            outputFilePath = path + "\\" + vmFile.getName() + OUTPUT_FILE_EXTENSION;
-        } else {
-            outputFilePath = path.replace(INPUT_FILE_EXTENSION, OUTPUT_FILE_EXTENSION);
-        }
-
-        FileOutputStream fos = new FileOutputStream(outputFilePath);
+        FileOutputStream fos = new FileOutputStream(getOutputFilePath(path));
         BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(fos));
 
         for (String line : binaryLines) {
@@ -28,4 +25,68 @@ public class FileWriter {
 
         bw.close();
     }
+
+    public static StreamingFileWriter openStreamingFile(String path) throws IOException {
+        return new StreamingFileWriter(getOutputFilePath(path));
+    }
+
+    public static ChannelFileWriter openChannelFile(String path, int bufferSize, String lineSeparator) throws IOException {
+        return new ChannelFileWriter(getOutputPath(path, OUTPUT_FILE_EXTENSION), bufferSize, lineSeparator);
+    }
+
+    public static Path getAssemblyOutputPath(String path){
+        return getOutputPath(path, OUTPUT_FILE_EXTENSION);
+    }
+
+    // .hack text with one 16 digit binary word per line, or a packed big endian image
+    public static Path writeHackFile(short[] machineCode, String path, boolean binaryImage) throws IOException {
+        Path outputPath = getOutputPath(path, binaryImage ? HACK_IMAGE_EXTENSION : HACK_FILE_EXTENSION);
+        ByteBuffer buffer = ByteBuffer.allocate(machineCode.length * (binaryImage ? 2 : 16 + LINE_SEPARATOR.length()));
+
+        for (short word : machineCode) {
+            if (binaryImage) {
+                buffer.putShort(word);
+                continue;
+            }
+
+            for (int bit = 15; bit >= 0; bit--) {
+                buffer.put((byte) ((word >> bit & 1) == 0 ? '0' : '1'));
+            }
+
+            for (int i = 0; i < LINE_SEPARATOR.length(); i++) {
+                buffer.put((byte) LINE_SEPARATOR.charAt(i));
+            }
+        }
+
+        buffer.flip();
+
+        try (FileChannel channel = FileChannel.open(outputPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+
+        return outputPath;
+    }
+
+    // a directory Foo is written to Foo/Foo.asm, a file Foo.vm to Foo.asm next to it
+    public static Path getOutputPath(String path, String outputExtension){
+        Path inputPath = Path.of(path).toAbsolutePath().normalize();
+        String name = inputPath.getFileName().toString();
+
+        if(inputPath.toFile().isDirectory()){
+            return inputPath.resolve(name + outputExtension);
+        }
+
+        if(name.endsWith(INPUT_FILE_EXTENSION)){
+            name = name.substring(0, name.length() - INPUT_FILE_EXTENSION.length());
+        }
+
+        return inputPath.resolveSibling(name + outputExtension);
+    }
+
+    private static String getOutputFilePath(String path){
+        return getOutputPath(path, OUTPUT_FILE_EXTENSION).toString();
+    }
 }
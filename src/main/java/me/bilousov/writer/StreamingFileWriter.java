@@ -0,0 +1,33 @@
+package me.bilousov.writer;
+
+import me.bilousov.translator.AssemblyBuffer;
+
+import java.io.*;
+
+public class StreamingFileWriter implements AssemblyFileWriter {
+
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+
+    private final BufferedWriter bufferedWriter;
+
+    StreamingFileWriter(String outputFilePath) throws IOException {
+        this.bufferedWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(outputFilePath)));
+    }
+
+    @Override
+    public void write(String assembly) throws IOException {
+        bufferedWriter.write(assembly);
+        bufferedWriter.write(LINE_SEPARATOR);
+    }
+
+    @Override
+    public void write(AssemblyBuffer assembly) throws IOException {
+        assembly.writeTo(bufferedWriter);
+        bufferedWriter.write(LINE_SEPARATOR);
+    }
+
+    @Override
+    public void close() throws IOException {
+        bufferedWriter.close();
+    }
+}
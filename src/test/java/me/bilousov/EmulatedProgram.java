@@ -0,0 +1,151 @@
+package me.bilousov;
+
+import me.bilousov.hack.HackAssembler;
+import me.bilousov.hack.HackEmulator;
+import me.bilousov.parser.VMCodeParser;
+import me.bilousov.translator.TranslationContext;
+import me.bilousov.translator.TranslatorOptions;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// translates the VM files of a directory, assembles them in process and runs them to the end of Sys.init
+public final class EmulatedProgram {
+
+    public static final int FIRST_STATIC = 16;
+    private static final long MAX_CYCLES = 10_000_000;
+
+    // the statics of Main.vm in the order Main.main first uses them, so they are the first variables
+    public static final short[] SAMPLE_STATICS = {55, 9, 23, -1, 0, -1, 0, 511};
+    public static final int SAMPLE_THIS = 3000;
+    public static final int SAMPLE_THAT = 4000;
+
+    private final HackAssembler assembler;
+    private final HackEmulator emulator;
+
+    private EmulatedProgram(HackAssembler assembler, HackEmulator emulator) {
+        this.assembler = assembler;
+        this.emulator = emulator;
+    }
+
+    public static EmulatedProgram run(Path directory, TranslatorOptions options) throws IOException {
+        HackAssembler assembler = new HackAssembler();
+        new VMCodeParser(options).translateInParallel(directory.toString(), assembler, 1, new TranslationContext());
+        HackEmulator emulator = new HackEmulator(assembler.finish());
+        emulator.run(MAX_CYCLES);
+        assertTrue(emulator.isHalted(), "program did not reach its halt loop");
+
+        return new EmulatedProgram(assembler, emulator);
+    }
+
+    public short ram(int address){
+        return emulator.getRam()[address];
+    }
+
+    public short[] statics(int count){
+        short[] statics = new short[count];
+        System.arraycopy(emulator.getRam(), FIRST_STATIC, statics, 0, count);
+
+        return statics;
+    }
+
+    public int getRomSize(){
+        return assembler.getInstructionCount();
+    }
+
+    public long getCycles(){
+        return emulator.getCycles();
+    }
+
+    // recursion, calls with zero to three arguments, locals, every compare with true and false
+    // outcomes and negative operands, the pointer segments and the logical commands
+    public static void writeSample(Path directory) throws IOException {
+        Files.writeString(directory.resolve("Sys.vm"), String.join("\n",
+                "function Sys.init 0",
+                "call Main.main 0",
+                "pop temp 0",
+                "label HALT",
+                "goto HALT"));
+        Files.writeString(directory.resolve("Main.vm"), String.join("\n",
+                "function Main.main 2",
+                "push constant 10",
+                "call Main.fib 1",
+                "pop static 0",
+                "push constant 7",
+                "push constant 3",
+                "push constant 5",
+                "call Main.mix 3",
+                "pop static 1",
+                "push constant " + SAMPLE_THIS,
+                "pop pointer 0",
+                "push constant " + SAMPLE_THAT,
+                "pop pointer 1",
+                "push constant 11",
+                "pop this 2",
+                "push constant 12",
+                "pop that 3",
+                "push this 2",
+                "push that 3",
+                "add",
+                "pop static 2",
+                "push constant 5",
+                "neg",
+                "push constant 3",
+                "lt",
+                "pop static 3",
+                "push constant 5",
+                "push constant 3",
+                "lt",
+                "pop static 4",
+                "push constant 4",
+                "push constant 4",
+                "eq",
+                "pop static 5",
+                "push constant 2",
+                "neg",
+                "push constant 7",
+                "gt",
+                "pop static 6",
+                "push constant 0",
+                "not",
+                "pop local 1",
+                "push local 1",
+                "push constant 255",
+                "and",
+                "push constant 256",
+                "or",
+                "pop static 7",
+                "push constant 0",
+                "return",
+                "function Main.fib 0",
+                "push argument 0",
+                "push constant 2",
+                "lt",
+                "if-goto BASE",
+                "push argument 0",
+                "push constant 1",
+                "sub",
+                "call Main.fib 1",
+                "push argument 0",
+                "push constant 2",
+                "sub",
+                "call Main.fib 1",
+                "add",
+                "return",
+                "label BASE",
+                "push argument 0",
+                "return",
+                "function Main.mix 1",
+                "push argument 0",
+                "push argument 1",
+                "sub",
+                "pop local 0",
+                "push local 0",
+                "push argument 2",
+                "add",
+                "return"));
+    }
+}
@@ -0,0 +1,65 @@
+package me.bilousov;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// the translation streams a file into the output, its heap must not grow with the size of the file
+class MainMemoryTest {
+
+    // the whole output of the file held in memory takes several times the heap
+    private static final int COMMANDS = 400_000;
+    private static final String HEAP = "-Xmx24m";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void translatesLargeFileInSmallHeap() throws Exception {
+        writeLargeFile();
+
+        assertTranslatesInSmallHeap();
+        assertTranslatesInSmallHeap("--threads=4");
+        assertTranslatesInSmallHeap("--markers=source_line");
+    }
+
+    private void assertTranslatesInSmallHeap(String... options) throws Exception {
+        Path vmFile = directory.resolve("Big.vm");
+        List<String> command = new ArrayList<>(List.of(Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                HEAP, "-cp", System.getProperty("java.class.path"), Main.class.getName(), vmFile.toString()));
+        command.addAll(List.of(options));
+        Path log = directory.resolve("translation.log");
+
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(log.toFile()).start();
+
+        assertTrue(process.waitFor(2, TimeUnit.MINUTES), "translation did not finish");
+        assertEquals(0, process.exitValue(), Files.readString(log));
+        assertEquals(COMMANDS, countCommands(directory.resolve("Big.asm")), String.join(" ", options));
+    }
+
+    private void writeLargeFile() throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(directory.resolve("Big.vm"))) {
+            writer.write("function Big.main 0\n");
+
+            for (int i = 0; i < COMMANDS; i++) {
+                writer.write("push constant 7\n");
+            }
+        }
+    }
+
+    private static long countCommands(Path assembly) throws IOException {
+        try (var lines = Files.lines(assembly)) {
+            return lines.filter(line -> line.equals("// push constant 7")).count();
+        }
+    }
+}
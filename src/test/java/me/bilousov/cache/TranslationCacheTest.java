@@ -0,0 +1,150 @@
+package me.bilousov.cache;
+
+import me.bilousov.EmulatedProgram;
+import me.bilousov.parser.VMCodeParser;
+import me.bilousov.translator.DebugMarkers;
+import me.bilousov.translator.TranslationContext;
+import me.bilousov.translator.TranslatorOptions;
+import me.bilousov.translator.VMOptimization;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class TranslationCacheTest {
+
+    private static final TranslatorOptions OPTIMIZED = TranslatorOptions.DEFAULT.withInlining(8, 2000)
+            .withRegisterStackTop(true).withDeadFunctionElimination(true)
+            .withVMOptimizations(EnumSet.allOf(VMOptimization.class));
+
+    @TempDir
+    Path directory;
+
+    private Path program;
+    private Path cacheDirectory;
+
+    @BeforeEach
+    void writeProgram() throws IOException {
+        program = Files.createDirectory(directory.resolve("program"));
+        cacheDirectory = directory.resolve("cache");
+        EmulatedProgram.writeSample(program);
+    }
+
+    @Test
+    void hitWritesWhatTheMissWrote() throws IOException {
+        for (TranslatorOptions options : List.of(TranslatorOptions.DEFAULT, OPTIMIZED,
+                OPTIMIZED.withDebugMarkers(DebugMarkers.SOURCE_LINE))) {
+            TranslationContext uncached = new TranslationContext();
+            String expected = translate(new VMCodeParser(options), uncached);
+            VMCodeParser parser = new VMCodeParser(options, new TranslationCache(cacheDirectory, options.toString()));
+            TranslationContext miss = new TranslationContext();
+            TranslationContext hit = new TranslationContext();
+
+            assertEquals(expected, translate(parser, miss), options.toString());
+            assertEquals(expected, translate(parser, hit), options.toString());
+
+            assertCacheCounts(miss, 0, 2);
+            assertCacheCounts(hit, 2, 0);
+            assertSameCounts(uncached, miss);
+            assertSameCounts(uncached, hit);
+        }
+    }
+
+    @Test
+    void keyChangesWithEverythingThatChangesTheOutput() throws IOException {
+        File main = program.resolve("Main.vm").toFile();
+        TranslationCache cache = new TranslationCache(cacheDirectory, TranslatorOptions.DEFAULT.toString());
+        String key = cache.keyOf(main, null, null);
+
+        assertEquals(key, new TranslationCache(cacheDirectory, TranslatorOptions.DEFAULT.toString()).keyOf(main, null, null));
+        assertNotEquals(key, cache.keyOf(program.resolve("Sys.vm").toFile(), null, null));
+        assertNotEquals(key, new TranslationCache(cacheDirectory, OPTIMIZED.toString()).keyOf(main, null, null));
+        assertNotEquals(key, new TranslationCache(cacheDirectory,
+                TranslatorOptions.DEFAULT.withInlining(8, 2000).toString()).keyOf(main, null, null));
+        assertNotEquals(key, new TranslationCache(cacheDirectory,
+                TranslatorOptions.DEFAULT.withDebugMarkers(DebugMarkers.FUNCTION).toString()).keyOf(main, null, null));
+        assertNotEquals(key, new TranslationCache(cacheDirectory, TranslatorOptions.DEFAULT.toString(), "format")
+                .keyOf(main, null, null));
+        // the numbered markers of the file start where the files before it ended
+        assertNotEquals(cache.keyOf(main, null, "markers 0 0"), cache.keyOf(main, null, "markers 12 1"));
+        assertNotEquals(key, cache.keyOf(main, Set.of("Sys.init", "Main.main"), null));
+
+        Files.writeString(main.toPath(), "\npush constant 1\npop temp 0\n", StandardOpenOption.APPEND);
+
+        assertNotEquals(key, cache.keyOf(main, null, null));
+    }
+
+    @Test
+    void storedEntryLoadsBack() throws IOException {
+        TranslationCache cache = new TranslationCache(cacheDirectory, TranslatorOptions.DEFAULT.toString());
+
+        cache.store("entry", new CachedFragment("@SP\nM=M+1", 1, 2, 3, 4, 5, 6));
+        CachedFragment loaded = cache.load("entry");
+
+        assertEquals("@SP\nM=M+1", loaded.getAssembly());
+        assertEquals(List.of(1L, 2L, 3L, 4L, 5L, 6L), List.of(loaded.getSavedInstructions(), loaded.getDebugMarkerCost(),
+                (long) loaded.getTranslatedFunctions(), loaded.getRemovedFunctions(), loaded.getRemovedFunctionInstructions(),
+                loaded.getRemovedVMCommands()));
+        assertNull(cache.load("missing"));
+    }
+
+    @Test
+    void corruptOrPartialEntryIsTranslatedAgain() throws IOException {
+        VMCodeParser parser = new VMCodeParser(OPTIMIZED, new TranslationCache(cacheDirectory, OPTIMIZED.toString()));
+        String expected = translate(parser, new TranslationContext());
+        List<Path> entries = listEntries();
+        assertEquals(2, entries.size());
+
+        String entry = Files.readString(entries.get(0));
+        Files.writeString(entries.get(0), entry.substring(0, entry.length() - 10));
+        Files.writeString(entries.get(1), "not a cache entry\n@SP");
+        TranslationContext repaired = new TranslationContext();
+
+        assertEquals(expected, translate(parser, repaired));
+        assertCacheCounts(repaired, 0, 2);
+
+        TranslationContext hit = new TranslationContext();
+        assertEquals(expected, translate(parser, hit));
+        assertCacheCounts(hit, 2, 0);
+    }
+
+    private String translate(VMCodeParser parser, TranslationContext context) throws IOException {
+        StringBuilder assembly = new StringBuilder();
+        parser.translate(program.toString(), line -> assembly.append(line).append('\n'), context);
+
+        return assembly.toString();
+    }
+
+    private List<Path> listEntries() throws IOException {
+        try (Stream<Path> entries = Files.list(cacheDirectory)) {
+            return entries.sorted().toList();
+        }
+    }
+
+    private static void assertCacheCounts(TranslationContext context, long hits, long misses){
+        assertEquals(hits, context.getCacheHitCount());
+        assertEquals(misses, context.getCacheMissCount());
+    }
+
+    private static void assertSameCounts(TranslationContext expected, TranslationContext actual){
+        assertEquals(expected.getSavedInstructionCount(), actual.getSavedInstructionCount());
+        assertEquals(expected.getDebugMarkerCost(), actual.getDebugMarkerCost());
+        assertEquals(expected.getTranslatedFunctionCount(), actual.getTranslatedFunctionCount());
+        assertEquals(expected.getRemovedFunctionCount(), actual.getRemovedFunctionCount());
+        assertEquals(expected.getRemovedFunctionInstructionCount(), actual.getRemovedFunctionInstructionCount());
+        assertEquals(expected.getRemovedVMCommandCount(), actual.getRemovedVMCommandCount());
+    }
+}
@@ -0,0 +1,159 @@
+package me.bilousov.hack;
+
+import me.bilousov.EmulatedProgram;
+import me.bilousov.parser.VMCodeParser;
+import me.bilousov.translator.AssemblyBuffer;
+import me.bilousov.translator.DebugMarkers;
+import me.bilousov.translator.TranslationContext;
+import me.bilousov.translator.TranslatorOptions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HackAssemblerTest {
+
+    @Test
+    void assemblesAddressesAndComputations(){
+        short[] rom = assemble(String.join("\n",
+                "// comment", "@2", "D=A  // inline comment", "@SP", "AM=M+1", "0;JMP", "D;JGT", "M=D|M", "A=!A"));
+
+        assertArrayEquals(new short[]{
+                0b0000000000000010,
+                (short) 0b1110110000010000,
+                0b0000000000000000,
+                (short) 0b1111110111101000,
+                (short) 0b1110101010000111,
+                (short) 0b1110001100000001,
+                (short) 0b1111010101001000,
+                (short) 0b1110110001100000}, rom);
+    }
+
+    @Test
+    void encodesEveryJump(){
+        String[] jumps = {"JGT", "JEQ", "JGE", "JLT", "JNE", "JLE", "JMP"};
+
+        for (int i = 0; i < jumps.length; i++) {
+            assertEquals(i + 1, assemble("D;" + jumps[i])[0] & 0b111, jumps[i]);
+        }
+    }
+
+    @Test
+    void rejectsUnknownJumps(){
+        for (String jump : new String[]{"JGX", "JEX", "JLX", "JNX", "JMX", "JXT", "XGT", "JG", "JGTE"}) {
+            IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> assemble("D;" + jump), jump);
+
+            assertTrue(e.getMessage().contains(jump), e.getMessage());
+        }
+    }
+
+    @Test
+    void resolvesLabelsAndVariables(){
+        HackAssembler assembler = new HackAssembler();
+        assembler.write(String.join("\n", "@counter", "M=0", "(LOOP)", "@LOOP", "0;JMP", "@other", "(END)"));
+        short[] rom = assembler.finish();
+
+        assertEquals(16, rom[0]);
+        assertEquals(2, rom[2]);
+        assertEquals(17, rom[4]);
+        assertEquals(Map.of("LOOP", 2, "END", 5), assembler.getLabels());
+    }
+
+    @Test
+    void rejectsLabelDefinedTwice(){
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> assemble(String.join("\n", "(LOOP)", "@LOOP", "0;JMP", "(LOOP)", "D=0")));
+
+        assertTrue(e.getMessage().contains("(LOOP)"), e.getMessage());
+    }
+
+    @Test
+    void acceptsLabelReferencedBeforeItsDefinition(){
+        short[] rom = assemble(String.join("\n", "@END", "0;JMP", "(END)", "@END", "0;JMP"));
+
+        assertEquals(2, rom[0]);
+        assertEquals(2, rom[2]);
+    }
+
+    @Test
+    void rejectsPredefinedLabelsAndUnknownCode(){
+        assertThrows(IllegalArgumentException.class, () -> assemble("(SP)"));
+        assertThrows(IllegalArgumentException.class, () -> assemble("D=D*A"));
+        assertThrows(IllegalArgumentException.class, () -> assemble("X=D"));
+        assertThrows(IllegalArgumentException.class, () -> assemble("@32768"));
+    }
+
+    @Test
+    void emittedCallsAssembleLikeTheirText(){
+        HackAssembler textAssembler = new HackAssembler();
+        AssemblyBuffer text = new AssemblyBuffer();
+        generate(text);
+        textAssembler.write(text);
+        HackAssembler assembler = new HackAssembler();
+        AssemblyBuffer emitted = assembler.newBuffer();
+
+        generate(emitted);
+
+        assertEquals(textAssembler.getInstructionCount(), emitted.countInstructions());
+        assertEquals(text.countInstructions(), emitted.countInstructions());
+        assembler.write(emitted);
+        assertArrayEquals(textAssembler.finish(), assembler.finish());
+        assertEquals(textAssembler.getLabels(), assembler.getLabels());
+    }
+
+    @Test
+    void emittedBlocksKeepTheirLabels(){
+        HackAssembler assembler = new HackAssembler();
+        AssemblyBuffer emitted = assembler.newBuffer();
+        String block = "@SP\nAM=M+1\n";
+
+        emitted.append(block).append("(LOOP)\n@LOOP\n0;JMP\n").append(block);
+        assertEquals(List.of("LOOP"), List.copyOf(assembler.getLabels().keySet()));
+        assertEquals(2, assembler.getLabels().get("LOOP"));
+        assertArrayEquals(assemble("@SP\nAM=M+1\n(LOOP)\n@LOOP\n0;JMP\n@SP\nAM=M+1"), assembler.finish());
+
+        assertThrows(IllegalArgumentException.class, () -> emitted.append("(LOOP)\n@LOOP\n0;JMP\n"));
+    }
+
+    @Test
+    void emittedTranslationAssemblesLikeItsText(@TempDir Path directory) throws IOException {
+        EmulatedProgram.writeSample(directory);
+
+        for (TranslatorOptions options : List.of(TranslatorOptions.DEFAULT, TranslatorOptions.DEFAULT.withCompactCode(true),
+                TranslatorOptions.DEFAULT.withRegisterStackTop(true).withDebugMarkers(DebugMarkers.SOURCE_LINE))) {
+            StringBuilder text = new StringBuilder();
+            new VMCodeParser(options).translate(directory.toString(), line -> text.append(line).append('\n'), new TranslationContext());
+            HackAssembler assembler = new HackAssembler();
+
+            new VMCodeParser(options).translate(directory.toString(), assembler, new TranslationContext());
+
+            assertArrayEquals(assemble(text.toString()), assembler.finish(), options.toString());
+        }
+    }
+
+    // the calls a command translation makes: constant blocks, whole lines, addresses, labels and pieces
+    private static void generate(AssemblyBuffer out){
+        out.append("@SP\nAM=M+1\n(TOP)\n");
+        out.line("D=M").line("@R13").address("counter").address(7).address("SP").label("END");
+        out.append("// ").append("push constant 1").newLine();
+        out.append('@').append("Main").append('.').append(3).newLine();
+        out.append('(').append("Main$ret.").append(0).append(')').newLine();
+        out.line("0;JMP").address("TOP").address("Main$ret.0").line("D;JGT");
+        out.append("@SP\nAM=M+1\n");
+    }
+
+    private static short[] assemble(String assembly){
+        HackAssembler assembler = new HackAssembler();
+        assembler.write(assembly);
+
+        return assembler.finish();
+    }
+}
@@ -0,0 +1,84 @@
+package me.bilousov.hack;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HackEmulatorTest {
+
+    @Test
+    void computesAndStopsInJumpToSelf(){
+        HackEmulator emulator = run(String.join("\n",
+                "@7", "D=A", "@5", "D=D+A", "@R3", "M=D",
+                "(END)", "@END", "0;JMP"));
+
+        assertTrue(emulator.isHalted());
+        assertEquals(12, emulator.getRam()[3]);
+        assertEquals(8, emulator.getCycles());
+    }
+
+    @Test
+    void stopsInHaltLoopWithDebugMarker(){
+        HackEmulator emulator = run(String.join("\n",
+                "@1", "D=A", "@R3", "M=D",
+                "(END)", "@22222", "@END", "0;JMP"));
+
+        assertTrue(emulator.isHalted());
+        assertEquals(1, emulator.getRam()[3]);
+    }
+
+    @Test
+    void keepsRunningLoopThatStoresToMemory(){
+        HackEmulator emulator = run(String.join("\n",
+                "(LOOP)", "@R3", "M=M+1", "@LOOP", "0;JMP"));
+
+        assertFalse(emulator.isHalted());
+        assertEquals(1000, emulator.getCycles());
+        assertEquals(250, emulator.getRam()[3]);
+    }
+
+    @Test
+    void keepsRunningLoopWithConditionalExit(){
+        HackEmulator emulator = run(String.join("\n",
+                "@R3", "D=M", "(LOOP)", "@EXIT", "D;JNE", "@LOOP", "0;JMP", "(EXIT)", "@EXIT", "0;JMP"));
+
+        assertFalse(emulator.isHalted());
+    }
+
+    @Test
+    void stopsAtEndOfRom(){
+        HackEmulator emulator = run(String.join("\n", "@3", "D=A", "@R4", "M=-D"));
+
+        assertTrue(emulator.isHalted());
+        assertEquals(-3, emulator.getRam()[4]);
+    }
+
+    @Test
+    void profilesCyclesByFunction(){
+        HackAssembler assembler = new HackAssembler();
+        assembler.write(String.join("\n",
+                "@Main.run", "0;JMP",
+                "(Main.run)", "@3", "D=A", "(Main.run$LOOP)", "D=D-1", "@Main.run$LOOP", "D;JGT",
+                "(Main.end)", "@Main.end", "0;JMP"));
+        HackEmulator emulator = new HackEmulator(assembler.finish());
+        emulator.run(1000);
+
+        Map<String, Long> profile = emulator.getFunctionProfile(assembler.getLabels());
+
+        assertEquals(Map.of("(bootstrap)", 2L, "Main.run", 11L, "Main.end", 2L), profile);
+        assertEquals("Main.run", profile.keySet().iterator().next());
+    }
+
+    private static HackEmulator run(String assembly){
+        HackAssembler assembler = new HackAssembler();
+        assembler.write(assembly);
+        HackEmulator emulator = new HackEmulator(assembler.finish());
+        emulator.run(1000);
+
+        return emulator;
+    }
+}
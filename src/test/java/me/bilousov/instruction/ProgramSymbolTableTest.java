@@ -0,0 +1,82 @@
+package me.bilousov.instruction;
+
+import me.bilousov.parser.VMInstructionParser;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProgramSymbolTableTest {
+
+    private final SymbolTable symbols = new SymbolTable();
+    private final VMInstructionParser parser = new VMInstructionParser(symbols);
+    private final ProgramSymbolTable table = new ProgramSymbolTable(symbols);
+
+    @Test
+    void indexesFunctionsLabelsAndStatics(){
+        addFile("Main.vm", "function Main.main 0", "label LOOP", "push static 0", "pop static 2", "goto LOOP");
+        addFile("Sys.vm", "function Sys.init 0", "label LOOP", "push static 0", "goto LOOP");
+        table.validate();
+
+        assertEquals(2, table.getFunctionCount());
+        assertEquals(2, table.getLabelCount());
+        assertEquals("Sys.vm", table.getDeclaringFile(symbols.intern("Sys.init")));
+        assertTrue(table.isFunction(symbols.intern("Main.main")));
+        assertFalse(table.isFunction(symbols.intern("Main.main$LOOP")));
+        assertEquals(3, table.getStaticCount());
+        assertEquals(Map.of("Main.vm", 2, "Sys.vm", 1), table.getStaticLayout());
+        assertFalse(table.isStaticOverflow());
+    }
+
+    @Test
+    void rejectsFunctionDeclaredInTwoFiles(){
+        addFile("Main.vm", "function Main.main 0");
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> addFile("Other.vm", "function Main.main 0"));
+
+        assertTrue(e.getMessage().contains("Main.vm") && e.getMessage().contains("Other.vm"), e.getMessage());
+    }
+
+    @Test
+    void rejectsLabelDeclaredTwiceInOneFunction(){
+        assertThrows(IllegalArgumentException.class,
+                () -> addFile("Main.vm", "function Main.main 0", "label LOOP", "label LOOP"));
+    }
+
+    @Test
+    void rejectsJumpToLabelOfAnotherFunction(){
+        addFile("Main.vm", "function Main.main 0", "label END", "function Main.other 0", "goto END");
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, table::validate);
+
+        assertTrue(e.getMessage().contains("Main.other$END"), e.getMessage());
+    }
+
+    @Test
+    void reportsStaticsBeyondTheStaticSegment(){
+        String[] commands = new String[241];
+
+        for (int i = 0; i < commands.length; i++) {
+            commands[i] = "push static " + i;
+        }
+
+        addFile("Main.vm", commands);
+
+        assertEquals(241, table.getStaticCount());
+        assertTrue(table.isStaticOverflow());
+    }
+
+    private void addFile(String fileName, String... commands){
+        parser.startFile();
+        table.startFile(fileName);
+
+        for (String command : commands) {
+            table.add(parser.parse(command));
+        }
+    }
+}
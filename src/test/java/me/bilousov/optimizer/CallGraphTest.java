@@ -0,0 +1,94 @@
+package me.bilousov.optimizer;
+
+import me.bilousov.instruction.SymbolTable;
+import me.bilousov.instruction.VMInstruction;
+import me.bilousov.parser.VMInstructionParser;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class CallGraphTest {
+
+    private final SymbolTable symbols = new SymbolTable();
+    private final VMInstructionParser parser = new VMInstructionParser(symbols);
+    private final CallGraph callGraph = new CallGraph(symbols);
+
+    @Test
+    void reachesFunctionsCalledFromSysInit(){
+        addFile("function Sys.init 0", "call Main.main 0", "function Sys.unused 0", "call Util.helper 0");
+        addFile("function Main.main 0", "call Main.loop 0", "function Main.loop 0", "call Main.main 0");
+        addFile("function Util.helper 0", "return");
+
+        assertEquals(5, callGraph.getFunctionCount());
+        assertEquals(Set.of("Sys.init", "Main.main", "Main.loop"), callGraph.reachableFrom("Sys.init"));
+    }
+
+    @Test
+    void keepsCallsToUndefinedFunctions(){
+        addFile("function Sys.init 0", "call Missing.run 0", "function Sys.unused 0");
+
+        assertFalse(callGraph.isDefined("Missing.run"));
+        assertEquals(Set.of("Sys.init", "Missing.run"), callGraph.reachableFrom("Sys.init"));
+    }
+
+    @Test
+    void callsOutsideFunctionsAreRoots(){
+        addFile("call Main.start 0", "function Main.start 0", "call Main.next 0", "function Main.next 0");
+        addFile("function Sys.init 0", "function Sys.unused 0");
+
+        assertEquals(Set.of("Sys.init", "Main.start", "Main.next"), callGraph.reachableFrom("Sys.init"));
+    }
+
+    @Test
+    void filterCountsRemovedFunctionsAndCommands(){
+        DeadFunctionFilter filter = new DeadFunctionFilter(Set.of("Sys.init"), Set.of("Sys.init"), symbols);
+
+        List<VMInstruction> kept = filter(filter, "function Sys.init 0", "push constant 1", "function Sys.dead 1",
+                "push local 0", "return", "function Sys.alsoDead 0", "return");
+
+        assertEquals(2, kept.size());
+        assertEquals(2, filter.getRemovedFunctionCount());
+        assertEquals(5, filter.getRemovedInstructionCount());
+    }
+
+    @Test
+    void filterDoesNotCountFunctionsLeftWithoutCallsByInlining(){
+        DeadFunctionFilter filter = new DeadFunctionFilter(Set.of("Sys.init"), Set.of("Sys.init", "Sys.inlined"), symbols);
+
+        List<VMInstruction> kept = filter(filter, "function Sys.init 0", "function Sys.inlined 0", "push argument 0",
+                "return", "function Sys.dead 0", "return");
+
+        assertEquals(1, kept.size());
+        assertEquals(1, filter.getRemovedFunctionCount());
+        assertEquals(2, filter.getRemovedInstructionCount());
+    }
+
+    private List<VMInstruction> filter(DeadFunctionFilter filter, String... commands){
+        List<VMInstruction> kept = new ArrayList<>();
+
+        for (String command : commands) {
+            VMInstruction instruction = parser.parse(command);
+
+            if (filter.keep(instruction)) {
+                kept.add(instruction);
+            }
+        }
+
+        return kept;
+    }
+
+    private void addFile(String... commands){
+        parser.startFile();
+
+        for (String command : commands) {
+            callGraph.add(parser.parse(command));
+        }
+
+        callGraph.endFile();
+    }
+}
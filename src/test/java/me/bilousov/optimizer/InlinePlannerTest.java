@@ -0,0 +1,87 @@
+package me.bilousov.optimizer;
+
+import me.bilousov.instruction.SymbolTable;
+import me.bilousov.parser.VMInstructionParser;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class InlinePlannerTest {
+
+    private static final String MAIN = String.join("\n",
+            "function Main.main 0",
+            "push constant 1",
+            "call Main.double 1",
+            "push constant 2",
+            "call Main.double 1",
+            "call Main.add 2",
+            "return",
+            "function Main.double 0",
+            "push argument 0",
+            "push argument 0",
+            "add",
+            "return",
+            "function Main.add 0",
+            "push argument 0",
+            "push argument 1",
+            "add",
+            "return");
+
+    private final SymbolTable symbols = new SymbolTable();
+
+    @Test
+    void reportsFunctionsInlinedAtEveryCallSite(){
+        InlinePlan plan = plan(8, 2000, MAIN);
+
+        assertEquals(3, plan.getInlinedCallCount());
+        assertEquals(Set.of("Main.double", "Main.add"), plan.getUncalledFunctions());
+    }
+
+    @Test
+    void keepsFunctionWithCallsLeftOverBudget(){
+        // each double expansion adds three commands over its call
+        InlinePlan plan = plan(8, 3, MAIN);
+
+        assertEquals(1, plan.getInlinedCallCount());
+        assertEquals(3, plan.getAddedInstructionCount());
+        assertEquals(Set.of(), plan.getUncalledFunctions());
+    }
+
+    @Test
+    void keepsFunctionsTooLongToInline(){
+        InlinePlan plan = plan(2, 2000, MAIN);
+
+        assertEquals(0, plan.getInlinedCallCount());
+        assertEquals(Set.of(), plan.getUncalledFunctions());
+    }
+
+    @Test
+    void ignoresCallsFromRemovedFunctions(){
+        // a call without the argument double reads can not be inlined
+        String program = MAIN + "\nfunction Main.unused 0\ncall Main.double 0\nreturn";
+
+        assertEquals(Set.of("Main.add"), plan(8, 2000, program).getUncalledFunctions());
+        assertEquals(Set.of("Main.double", "Main.add"),
+                plan(8, 2000, program, Set.of("Main.main", "Main.double", "Main.add")).getUncalledFunctions());
+    }
+
+    private InlinePlan plan(int threshold, int budget, String program){
+        return plan(threshold, budget, program, null);
+    }
+
+    private InlinePlan plan(int threshold, int budget, String program, Set<String> reachableFunctions){
+        VMInstructionParser parser = new VMInstructionParser(symbols);
+        InlinePlanner planner = new InlinePlanner(symbols, threshold, budget);
+        planner.startFile("Main.vm");
+
+        for (String line : program.split("\n")) {
+            planner.add(parser.parse(line));
+        }
+
+        planner.endFile();
+
+        return planner.plan(reachableFunctions);
+    }
+}
@@ -0,0 +1,71 @@
+package me.bilousov.optimizer;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PeepholeOptimizerTest {
+
+    @Test
+    void removesLoadOverwrittenByNextLoad() throws IOException {
+        assertEquals(List.of("@5", "D=A"), optimize("@3", "@5", "D=A"));
+    }
+
+    @Test
+    void keepsDebugMarkerFollowedByLoad() throws IOException {
+        List<String> lines = List.of("// push constant 5", "@7", "@5", "D=A", "// pop local 0", "@22222", "@LCL");
+
+        assertEquals(lines, optimize(lines.toArray(new String[0])));
+    }
+
+    @Test
+    void dropsReloadOfStoredValue() throws IOException {
+        assertEquals(List.of("@R13", "M=D", "D=D+1"), optimize("@R13", "M=D", "@R13", "D=M", "D=D+1"));
+        assertEquals(List.of("@R13", "D=M", "D=D+1"), optimize("@R13", "D=M", "D=M", "D=D+1"));
+    }
+
+    @Test
+    void materializesAluConstants() throws IOException {
+        assertEquals(List.of("D=1", "@R13", "M=D"), optimize("@1", "D=A", "@R13", "M=D"));
+        assertEquals(List.of("@SP", "A=M", "M=-1", "@SP", "M=M+1"),
+                optimize("D=-1", "@SP", "A=M", "M=D", "@SP", "M=M+1"));
+    }
+
+    @Test
+    void fusesPushFollowedByPop() throws IOException {
+        // once SP is left alone the pop reloads the value D still holds
+        assertEquals(List.of("@SP", "A=M", "M=D"),
+                optimize("@SP", "A=M", "M=D", "@SP", "M=M+1", "@SP", "M=M-1", "A=M", "D=M"));
+    }
+
+    @Test
+    void doesNotOptimizeAcrossLabels() throws IOException {
+        assertEquals(List.of("@3", "(LOOP)", "@5", "D=A"), optimize("@3", "(LOOP)", "@5", "D=A"));
+    }
+
+    @Test
+    void countsInstructionsWithoutComments() throws IOException {
+        List<String> output = new ArrayList<>();
+        PeepholeOptimizer optimizer = new PeepholeOptimizer(output::add);
+
+        optimizer.write("// push constant 2\n@2\nD=A\n@3\n@5\nD=A\n");
+        optimizer.flush();
+
+        assertEquals(5, optimizer.getInputInstructionCount());
+        assertEquals(4, optimizer.getOutputInstructionCount());
+    }
+
+    private static List<String> optimize(String... lines) throws IOException {
+        List<String> output = new ArrayList<>();
+        PeepholeOptimizer optimizer = new PeepholeOptimizer(output::add);
+
+        optimizer.write(String.join("\n", lines));
+        optimizer.flush();
+
+        return output;
+    }
+}
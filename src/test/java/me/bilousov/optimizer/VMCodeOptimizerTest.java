@@ -0,0 +1,208 @@
+package me.bilousov.optimizer;
+
+import me.bilousov.EmulatedProgram;
+import me.bilousov.instruction.Opcode;
+import me.bilousov.instruction.Segment;
+import me.bilousov.instruction.SymbolTable;
+import me.bilousov.instruction.VMInstruction;
+import me.bilousov.parser.VMInstructionParser;
+import me.bilousov.translator.TranslatorOptions;
+import me.bilousov.translator.VMOptimization;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VMCodeOptimizerTest {
+
+    private static final Set<VMOptimization> ALL = EnumSet.allOf(VMOptimization.class);
+
+    private final SymbolTable symbols = new SymbolTable();
+    private final VMInstructionParser parser = new VMInstructionParser(symbols);
+    private final List<VMInstruction> output = new ArrayList<>();
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void foldsConstantArithmetic() throws IOException {
+        VMCodeOptimizer optimizer = optimize(ALL, "push constant 1", "push constant 2", "add", "push constant 4", "sub");
+
+        assertConstants(-1);
+        assertEquals(4, optimizer.getRemovedInstructionCount());
+    }
+
+    @Test
+    void foldsInSixteenBits() throws IOException {
+        optimize(ALL, "push constant 32767", "push constant 1", "add");
+        assertConstants(-32768);
+    }
+
+    @Test
+    void foldsUnaryCommandsAndCompares() throws IOException {
+        optimize(ALL, "push constant 5", "neg", "push constant 0", "not",
+                "push constant 3", "push constant 4", "lt", "push constant 4", "push constant 4", "gt");
+
+        assertConstants(-5, -1, -1, 0);
+    }
+
+    @Test
+    void leavesComparesWhoseDifferenceOverflows() throws IOException {
+        optimize(ALL, "push constant 32767", "push constant 2", "neg", "gt");
+
+        assertEquals(List.of(Opcode.PUSH, Opcode.PUSH, Opcode.GT), opcodes());
+        assertEquals(-2, output.get(1).getIndex());
+    }
+
+    @Test
+    void comparesComputeWhatTheGeneratedCodeDoes() throws IOException {
+        Files.writeString(directory.resolve("Sys.vm"), String.join("\n",
+                "function Sys.init 0",
+                // the differences wrap, the last one to -32768 in one of the subtraction orders
+                "push constant 20000",
+                "neg",
+                "push constant 20000",
+                "gt",
+                "pop static 0",
+                "push constant 20000",
+                "push constant 20000",
+                "neg",
+                "lt",
+                "pop static 1",
+                "push constant 100",
+                "push constant 200",
+                "lt",
+                "pop static 2",
+                "push constant 32767",
+                "push constant 1",
+                "neg",
+                "lt",
+                "pop static 3",
+                "label HALT",
+                "goto HALT"));
+
+        for (TranslatorOptions options : List.of(TranslatorOptions.DEFAULT, TranslatorOptions.DEFAULT.withRegisterStackTop(true))) {
+            short[] expected = EmulatedProgram.run(directory, options).statics(4);
+
+            assertArrayEquals(new short[]{-1, -1, -1}, Arrays.copyOf(expected, 3));
+            assertArrayEquals(expected, EmulatedProgram.run(directory, options.withVMOptimizations(ALL)).statics(4));
+        }
+    }
+
+    @Test
+    void leavesNonConstantOperandsAlone() throws IOException {
+        optimize(ALL, "push local 0", "push constant 2", "add");
+
+        assertEquals(List.of(Opcode.PUSH, Opcode.PUSH, Opcode.ADD), opcodes());
+    }
+
+    @Test
+    void turnsPushPopIntoMove() throws IOException {
+        optimize(ALL, "push local 1", "pop static 3");
+
+        VMInstruction move = output.get(0);
+        assertEquals(1, output.size());
+        assertEquals(Opcode.MOVE, move.getOpcode());
+        assertEquals(Segment.LOCAL, move.getSourceSegment());
+        assertEquals(1, move.getSourceIndex());
+        assertEquals(Segment.STATIC, move.getSegment());
+        assertEquals(3, move.getIndex());
+    }
+
+    @Test
+    void dropsPushPopOfTheSameCell() throws IOException {
+        VMCodeOptimizer optimizer = optimize(ALL, "push local 1", "pop local 1");
+
+        assertEquals(List.of(), output);
+        assertEquals(2, optimizer.getRemovedInstructionCount());
+    }
+
+    @Test
+    void negatesJumpOverNot() throws IOException {
+        optimize(ALL, "push local 0", "not", "if-goto LOOP");
+
+        assertEquals(List.of(Opcode.PUSH, Opcode.IF_NOT_GOTO), opcodes());
+        assertEquals(symbols.intern("LOOP"), output.get(1).getSymbol());
+    }
+
+    @Test
+    void resolvesConstantConditions() throws IOException {
+        optimize(ALL, "push constant 1", "if-goto A", "push constant 0", "if-goto B");
+
+        assertEquals(List.of(Opcode.GOTO), opcodes());
+        assertEquals(symbols.intern("A"), output.get(0).getSymbol());
+    }
+
+    @Test
+    void doesNotFoldAcrossLabels() throws IOException {
+        optimize(ALL, "push constant 1", "label JOIN", "push constant 2", "add");
+
+        assertEquals(List.of(Opcode.PUSH, Opcode.LABEL, Opcode.PUSH, Opcode.ADD), opcodes());
+    }
+
+    @Test
+    void appliesOnlyTheSelectedOptimizations() throws IOException {
+        VMCodeOptimizer optimizer = optimize(EnumSet.of(VMOptimization.NEGATED_JUMPS),
+                "push constant 1", "push constant 2", "add", "pop local 0", "push local 0", "not", "if-goto END");
+
+        assertEquals(List.of(Opcode.PUSH, Opcode.PUSH, Opcode.ADD, Opcode.POP, Opcode.PUSH, Opcode.IF_NOT_GOTO), opcodes());
+        assertEquals(1, optimizer.getRemovedInstructionCount());
+    }
+
+    @Test
+    void optimizedSampleComputesTheSameResults() throws IOException {
+        EmulatedProgram.writeSample(directory);
+        TranslatorOptions optimized = TranslatorOptions.DEFAULT.withVMOptimizations(ALL);
+
+        EmulatedProgram plain = EmulatedProgram.run(directory, TranslatorOptions.DEFAULT);
+        EmulatedProgram program = EmulatedProgram.run(directory, optimized);
+
+        assertArrayEquals(EmulatedProgram.SAMPLE_STATICS, program.statics(EmulatedProgram.SAMPLE_STATICS.length));
+        assertArrayEquals(EmulatedProgram.SAMPLE_STATICS,
+                EmulatedProgram.run(directory, optimized.withRegisterStackTop(true)).statics(EmulatedProgram.SAMPLE_STATICS.length));
+        assertTrue(program.getRomSize() < plain.getRomSize());
+    }
+
+    private VMCodeOptimizer optimize(Set<VMOptimization> optimizations, String... commands) throws IOException {
+        VMCodeOptimizer optimizer = new VMCodeOptimizer(optimizations, output::add);
+
+        for (String command : commands) {
+            optimizer.handle(parser.parse(command));
+        }
+
+        optimizer.flush();
+
+        return optimizer;
+    }
+
+    private void assertConstants(int... values){
+        assertEquals(values.length, output.size(), output.toString());
+
+        for (int i = 0; i < values.length; i++) {
+            assertEquals(Opcode.PUSH, output.get(i).getOpcode());
+            assertEquals(Segment.CONSTANT, output.get(i).getSegment());
+            assertEquals(values[i], output.get(i).getIndex());
+        }
+    }
+
+    private List<Opcode> opcodes(){
+        List<Opcode> opcodes = new ArrayList<>();
+
+        for (VMInstruction instruction : output) {
+            opcodes.add(instruction.getOpcode());
+        }
+
+        return opcodes;
+    }
+}
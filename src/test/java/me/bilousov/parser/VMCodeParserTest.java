@@ -0,0 +1,270 @@
+package me.bilousov.parser;
+
+import me.bilousov.hack.HackAssembler;
+import me.bilousov.hack.HackEmulator;
+import me.bilousov.metrics.Stage;
+import me.bilousov.metrics.TranslationMetrics;
+import me.bilousov.translator.DebugMarkers;
+import me.bilousov.translator.TranslationContext;
+import me.bilousov.translator.TranslatorOptions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VMCodeParserTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void outputDoesNotDependOnThreadCount() throws IOException {
+        writeProgram();
+
+        String sequential = translate(TranslatorOptions.DEFAULT, 1);
+
+        assertEquals(sequential, translate(TranslatorOptions.DEFAULT, 2));
+        assertEquals(sequential, translate(TranslatorOptions.DEFAULT, Runtime.getRuntime().availableProcessors() + 3));
+    }
+
+    @Test
+    void outputDoesNotDependOnThreadCountInCompactMode() throws IOException {
+        writeProgram();
+        TranslatorOptions options = TranslatorOptions.DEFAULT.withCompactCode(true).withInlining(8, 2000);
+
+        String sequential = translate(options, 1);
+
+        assertEquals(sequential, translate(options, 2));
+        assertEquals(sequential, translate(options, 8));
+    }
+
+    @Test
+    void translatesFilesInNameOrder() throws IOException {
+        writeProgram();
+
+        String assembly = translate(TranslatorOptions.DEFAULT, 1);
+
+        assertTrue(assembly.indexOf("(Main.main)") < assembly.indexOf("(Sys.init)"));
+        assertTrue(assembly.indexOf("(Sys.init)") < assembly.indexOf("(Util.max)"));
+    }
+
+    @Test
+    void numbersSourceLineMarkersAcrossFiles() throws IOException {
+        writeProgram();
+
+        String assembly = translate(TranslatorOptions.DEFAULT.withDebugMarkers(DebugMarkers.SOURCE_LINE), 4);
+
+        // 11 commands in Main.vm, 5 in Sys.vm and 10 in Util.vm
+        List<String> markers = markersAfter(assembly.substring(assembly.indexOf("// function Main.main")), "// ");
+        assertEquals(26, markers.size());
+
+        for (int i = 0; i < markers.size(); i++) {
+            assertEquals("@" + i, markers.get(i));
+        }
+    }
+
+    @Test
+    void numbersFunctionMarkersAcrossFiles() throws IOException {
+        writeProgram();
+
+        String assembly = translate(TranslatorOptions.DEFAULT.withDebugMarkers(DebugMarkers.FUNCTION), 4);
+
+        assertEquals(List.of("@0", "@1", "@2"), markersAfter(assembly, "// function "));
+    }
+
+    @Test
+    void metricsCountEveryAssembledInstructionOnce() throws IOException {
+        writeProgram();
+        // the stack top is still held in D at the end of the file
+        Files.writeString(directory.resolve("Util.vm"), "\nfunction Util.seven 0\npush constant 7\n", StandardOpenOption.APPEND);
+        TranslatorOptions options = TranslatorOptions.DEFAULT.withRegisterStackTop(true).withInlining(8, 2000);
+        TranslationMetrics metrics = new TranslationMetrics();
+        HackAssembler assembler = new HackAssembler();
+
+        new VMCodeParser(options).translateInParallel(directory.toString(), assembler, 1, new TranslationContext(metrics));
+
+        String json = metrics.toJson();
+        assertTrue(json.contains("\"asmInstructions\": " + assembler.getInstructionCount() + ","), json);
+        assertTrue(json.contains("\"vmInstructions\": 28,"), json);
+    }
+
+    @Test
+    void metricsTimeTheWrites() throws IOException {
+        writeProgram();
+
+        for (int threads : new int[]{1, 3}) {
+            TranslationMetrics metrics = new TranslationMetrics();
+            new VMCodeParser(TranslatorOptions.DEFAULT).translateInParallel(directory.toString(), assembly -> Thread.onSpinWait(),
+                    threads, new TranslationContext(metrics));
+
+            assertTrue(metrics.getStageNanos(Stage.WRITE) > 0, threads + " threads");
+            assertTrue(metrics.getStageNanos(Stage.TRANSLATE) > 0, threads + " threads");
+        }
+    }
+
+    @Test
+    void inliningRemovesFunctionsLeftWithoutCalls() throws IOException {
+        Files.writeString(directory.resolve("Sys.vm"), String.join("\n",
+                "function Sys.init 0",
+                "push constant 20",
+                "call Sys.double 1",
+                "push constant 1",
+                "call Sys.double 1",
+                "add",
+                "pop static 0",
+                "label HALT",
+                "goto HALT",
+                "function Sys.double 0",
+                "push argument 0",
+                "push argument 0",
+                "add",
+                "return"));
+        TranslatorOptions inlining = TranslatorOptions.DEFAULT.withInlining(8, 2000);
+        TranslationContext context = new TranslationContext();
+
+        HackAssembler assembler = assemble(inlining, context);
+
+        assertFalse(assembler.getLabels().containsKey("Sys.double"));
+        assertEquals(1, context.getInlinedFunctionCount());
+        assertEquals(42, emulate(assembler).getRam()[16]);
+        assertEquals(42, emulate(assemble(TranslatorOptions.DEFAULT, new TranslationContext())).getRam()[16]);
+    }
+
+    @Test
+    void deadFunctionEliminationCountsOnlyUnreachableFunctions() throws IOException {
+        Files.writeString(directory.resolve("Sys.vm"), String.join("\n",
+                "function Sys.init 0",
+                "push constant 21",
+                "call Sys.double 1",
+                "pop static 0",
+                "label HALT",
+                "goto HALT",
+                "function Sys.double 0",
+                "push argument 0",
+                "push argument 0",
+                "add",
+                "return",
+                "function Sys.unused 0",
+                "call Sys.missing 0",
+                "return"));
+        TranslationContext context = new TranslationContext();
+
+        HackAssembler assembler = assemble(TranslatorOptions.DEFAULT.withDeadFunctionElimination(true)
+                .withInlining(8, 2000), context);
+
+        assertFalse(assembler.getLabels().containsKey("Sys.unused"));
+        assertFalse(assembler.getLabels().containsKey("Sys.double"));
+        assertEquals(3, context.getFunctionCount());
+        assertEquals(1, context.getRemovedFunctionCount());
+        assertEquals(3, context.getRemovedFunctionInstructionCount());
+        assertEquals(1, context.getInlinedFunctionCount());
+        assertEquals(42, emulate(assembler).getRam()[16]);
+    }
+
+    @Test
+    void sameLabelInTwoFunctionsJumpsWithinItsFunction() throws IOException {
+        Files.writeString(directory.resolve("Sys.vm"), String.join("\n",
+                "function Sys.init 0",
+                "call Sys.count 0",
+                "pop static 0",
+                "label LOOP",
+                "goto LOOP",
+                "function Sys.count 1",
+                "label LOOP",
+                "push local 0",
+                "push constant 1",
+                "add",
+                "pop local 0",
+                "push local 0",
+                "push constant 3",
+                "lt",
+                "if-goto LOOP",
+                "push local 0",
+                "return"));
+        TranslationContext context = new TranslationContext();
+
+        HackEmulator emulator = emulate(assemble(TranslatorOptions.DEFAULT.withProgramSymbols(true), context));
+
+        assertEquals(3, emulator.getRam()[16]);
+        assertEquals(2, context.getProgramSymbols().getLabelCount());
+    }
+
+    private HackAssembler assemble(TranslatorOptions options, TranslationContext context) throws IOException {
+        HackAssembler assembler = new HackAssembler();
+        new VMCodeParser(options).translateInParallel(directory.toString(), assembler, 1, context);
+
+        return assembler;
+    }
+
+    private static HackEmulator emulate(HackAssembler assembler){
+        HackEmulator emulator = new HackEmulator(assembler.finish());
+        emulator.run(100_000);
+        assertTrue(emulator.isHalted());
+
+        return emulator;
+    }
+
+    private static List<String> markersAfter(String assembly, String commentPrefix){
+        String[] lines = assembly.split("\n");
+        List<String> markers = new ArrayList<>();
+
+        for (int i = 0; i + 1 < lines.length; i++) {
+            if (lines[i].startsWith(commentPrefix) && lines[i + 1].startsWith("@")) {
+                markers.add(lines[i + 1]);
+            }
+        }
+
+        return markers;
+    }
+
+    private String translate(TranslatorOptions options, int threads) throws IOException {
+        StringBuilder assembly = new StringBuilder();
+
+        new VMCodeParser(options).translateInParallel(directory.toString(), line -> assembly.append(line).append('\n'),
+                threads, new TranslationContext());
+
+        return assembly.toString();
+    }
+
+    private void writeProgram() throws IOException {
+        // written in the reverse of the translation order, the directory listing order must not matter
+        Files.writeString(directory.resolve("Util.vm"), String.join("\n",
+                "function Util.max 0",
+                "push argument 0",
+                "push argument 1",
+                "gt",
+                "if-goto FIRST",
+                "push argument 1",
+                "return",
+                "label FIRST",
+                "push argument 0",
+                "return"));
+        Files.writeString(directory.resolve("Sys.vm"), String.join("\n",
+                "function Sys.init 0",
+                "call Main.main 0",
+                "pop temp 0",
+                "label HALT",
+                "goto HALT"));
+        Files.writeString(directory.resolve("Main.vm"), String.join("\n",
+                "function Main.main 1",
+                "push constant 3",
+                "push constant 7",
+                "call Util.max 2",
+                "pop static 0",
+                "push static 0",
+                "push constant 7",
+                "eq",
+                "pop local 0",
+                "push constant 0",
+                "return"));
+    }
+}
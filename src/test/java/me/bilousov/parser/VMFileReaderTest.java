@@ -0,0 +1,42 @@
+package me.bilousov.parser;
+
+import me.bilousov.instruction.SymbolTable;
+import me.bilousov.instruction.VMInstruction;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VMFileReaderTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void skipsCommentsAndBlankLines() throws IOException {
+        Path file = Files.writeString(directory.resolve("Main.vm"), "// header\r\n\r\npush constant 1\r\n  add\n");
+        List<VMInstruction> instructions = new ArrayList<>();
+
+        new VMFileReader().read(file.toFile(), new VMInstructionParser(new SymbolTable()), instructions::add);
+
+        assertEquals(2, instructions.size());
+    }
+
+    @Test
+    void namesFileAndLineOfInvalidCommand() throws IOException {
+        Path file = Files.writeString(directory.resolve("Main.vm"), "// header\npush constant 1\npush constant 40000\n");
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> new VMFileReader()
+                .read(file.toFile(), new VMInstructionParser(new SymbolTable()), instruction -> { }));
+
+        assertTrue(e.getMessage().startsWith("Main.vm:3: "), e.getMessage());
+    }
+}
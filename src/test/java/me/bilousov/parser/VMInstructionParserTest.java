@@ -0,0 +1,80 @@
+package me.bilousov.parser;
+
+import me.bilousov.instruction.Opcode;
+import me.bilousov.instruction.Segment;
+import me.bilousov.instruction.SymbolTable;
+import me.bilousov.instruction.VMInstruction;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VMInstructionParserTest {
+
+    private final SymbolTable symbols = new SymbolTable();
+    private final VMInstructionParser parser = new VMInstructionParser(symbols);
+
+    @Test
+    void parsesMemoryAccess(){
+        VMInstruction instruction = parser.parse("  push local 3 // comment");
+
+        assertEquals(Opcode.PUSH, instruction.getOpcode());
+        assertEquals(Segment.LOCAL, instruction.getSegment());
+        assertEquals(3, instruction.getIndex());
+    }
+
+    @Test
+    void acceptsLargestConstant(){
+        assertEquals(32767, parser.parse("push constant 32767").getIndex());
+    }
+
+    @Test
+    void rejectsConstantAboveAddressRange(){
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> parser.parse("push constant 40000"));
+
+        assertTrue(e.getMessage().contains("push constant 40000"));
+    }
+
+    @Test
+    void rejectsLongDigitStringInsteadOfWrapping(){
+        assertThrows(IllegalArgumentException.class, () -> parser.parse("push constant 99999999999"));
+    }
+
+    @Test
+    void rejectsTrailingTokens(){
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> parser.parse("push local 0 junk"));
+
+        assertTrue(e.getMessage().contains("push local 0 junk"));
+        assertThrows(IllegalArgumentException.class, () -> parser.parse("add 1"));
+        assertThrows(IllegalArgumentException.class, () -> parser.parse("call Foo.bar 2 3"));
+    }
+
+    @Test
+    void scopesLabelsToTheirFunction(){
+        parser.parse("function Main.main 0");
+        VMInstruction label = parser.parse("label LOOP");
+        VMInstruction jump = parser.parse("if-goto LOOP");
+        parser.parse("function Main.other 0");
+
+        assertEquals("Main.main$LOOP", symbols.nameOf(label.getSymbol()));
+        assertEquals(label.getSymbol(), jump.getSymbol());
+        assertEquals("Main.other$LOOP", symbols.nameOf(parser.parse("goto LOOP").getSymbol()));
+        assertEquals("Main.main", symbols.nameOf(parser.parse("call Main.main 0").getSymbol()));
+    }
+
+    @Test
+    void leavesLabelsBeforeTheFirstFunctionOfAFileUnscoped(){
+        parser.parse("function Main.main 0");
+        parser.startFile();
+
+        assertEquals("START", symbols.nameOf(parser.parse("label START").getSymbol()));
+    }
+
+    @Test
+    void rejectsMissingOperandAndPopToConstant(){
+        assertThrows(IllegalArgumentException.class, () -> parser.parse("push local"));
+        assertThrows(IllegalArgumentException.class, () -> parser.parse("pop constant 1"));
+        assertThrows(IllegalArgumentException.class, () -> parser.parse("push local -1"));
+    }
+}
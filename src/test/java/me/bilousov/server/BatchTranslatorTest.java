@@ -0,0 +1,61 @@
+package me.bilousov.server;
+
+import me.bilousov.EmulatedProgram;
+import me.bilousov.Main;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BatchTranslatorTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void readsManifestRelativeToItsDirectory() throws IOException {
+        Path manifest = Files.writeString(directory.resolve("programs.txt"), String.join("\n",
+                "# programs of the batch",
+                "Sample",
+                "",
+                "  single/Main.vm  ",
+                directory.resolve("Other").toString()));
+
+        assertEquals(List.of(directory.resolve("Sample").toString(), directory.resolve("single/Main.vm").toString(),
+                directory.resolve("Other").toString()), BatchTranslator.readManifest(manifest));
+    }
+
+    @Test
+    void translatesEveryProgramAndReportsFailures() throws IOException {
+        Path sample = Files.createDirectory(directory.resolve("Sample"));
+        EmulatedProgram.writeSample(sample);
+        Path single = Files.createDirectory(directory.resolve("single"));
+        Files.writeString(single.resolve("Main.vm"), "function Main.main 0\npush constant 1\nreturn\n");
+        Path broken = Files.createDirectory(directory.resolve("Broken"));
+        Files.writeString(broken.resolve("Main.vm"), "function Main.main 0\npush nowhere 1\n");
+        Path manifest = Files.writeString(directory.resolve("programs.txt"), "Sample\nBroken\nsingle/Main.vm\n");
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        int failed = new BatchTranslator(BatchTranslator.readManifest(manifest), new String[]{"--compact"}, 2, Main::translate)
+                .run(new PrintStream(output, true, StandardCharsets.UTF_8));
+
+        String report = output.toString(StandardCharsets.UTF_8);
+        assertEquals(1, failed, report);
+        assertTrue(Files.exists(sample.resolve("Sample.asm")), report);
+        assertTrue(Files.exists(single.resolve("Main.asm")), report);
+        assertTrue(report.contains("Batch: 3 programs, 2 translated, 1 failed"), report);
+        assertTrue(report.contains("FAILED") && report.contains(broken.toString()), report);
+        // the summary lists the programs in manifest order
+        assertTrue(report.indexOf("OK") > report.indexOf("Batch:"), report);
+        assertTrue(report.indexOf(sample.resolve("Sample.asm").toString()) < report.indexOf(single.resolve("Main.asm").toString()), report);
+    }
+}
@@ -0,0 +1,59 @@
+package me.bilousov.server;
+
+import me.bilousov.EmulatedProgram;
+import me.bilousov.Main;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DirectoryWatcherTest {
+
+    private static final long TIMEOUT_SECONDS = 10;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void translatesOnStartAndAgainWhenAFileIsAdded() throws Exception {
+        EmulatedProgram.writeSample(directory);
+        CountDownLatch first = new CountDownLatch(1);
+        CountDownLatch second = new CountDownLatch(2);
+        TranslationService service = (args, out) -> {
+            Path outputPath = Main.translate(args, out);
+            first.countDown();
+            second.countDown();
+
+            return outputPath;
+        };
+        Thread watcher = new Thread(() -> {
+            try {
+                new DirectoryWatcher(new String[]{directory.toString()}, service).run();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        watcher.setDaemon(true);
+        watcher.start();
+
+        try {
+            assertTrue(first.await(TIMEOUT_SECONDS, TimeUnit.SECONDS), "no translation on start");
+            Files.writeString(directory.resolve("Util.vm"), "function Util.one 0\npush constant 1\nreturn\n");
+
+            assertTrue(second.await(TIMEOUT_SECONDS, TimeUnit.SECONDS), "no translation after the change");
+            assertTrue(Files.readString(directory.resolve(directory.getFileName() + ".asm")).contains("(Util.one)"));
+        } finally {
+            watcher.interrupt();
+            watcher.join(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+        }
+
+        assertFalse(watcher.isAlive());
+    }
+}
@@ -0,0 +1,109 @@
+package me.bilousov.server;
+
+import me.bilousov.EmulatedProgram;
+import me.bilousov.Main;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TranslationServerTest {
+
+    private static final long TIMEOUT_SECONDS = 10;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void translatesRequestsUntilShutdown() throws Exception {
+        EmulatedProgram.writeSample(directory);
+        int port = freePort();
+        Thread server = start(() -> new TranslationServer(port, Main::translate).run());
+
+        try (Socket socket = connect(port);
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             PrintStream out = new PrintStream(socket.getOutputStream(), true, StandardCharsets.UTF_8)) {
+            out.println(directory + " --compact");
+            String reply = readReply(in);
+
+            assertTrue(reply.startsWith("OK " + directory.resolve(directory.getFileName() + ".asm") + " "), reply);
+            assertTrue(Files.exists(directory.resolve(directory.getFileName() + ".asm")));
+
+            out.println(directory.resolve("Missing.vm"));
+            assertTrue(readReply(in).startsWith("ERROR "));
+
+            out.println("shutdown");
+            assertEquals("OK shutdown", in.readLine());
+        }
+
+        server.join(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+        assertFalse(server.isAlive());
+    }
+
+    private static Thread start(Task task){
+        Thread thread = new Thread(() -> {
+            try {
+                task.run();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+
+        return thread;
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            return socket.getLocalPort();
+        }
+    }
+
+    // the server may not be listening yet
+    private static Socket connect(int port) throws IOException, InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+
+        while (true) {
+            try {
+                return new Socket(InetAddress.getLoopbackAddress(), port);
+            } catch (IOException e) {
+                if (System.nanoTime() > deadline) {
+                    throw e;
+                }
+
+                Thread.sleep(20);
+            }
+        }
+    }
+
+    // the summary lines come first, the reply ends with the OK or ERROR line
+    private static String readReply(BufferedReader in) throws IOException {
+        String line = in.readLine();
+
+        while (line != null && !line.startsWith("OK ") && !line.startsWith("ERROR ")) {
+            line = in.readLine();
+        }
+
+        return line;
+    }
+
+    private interface Task {
+
+        void run() throws IOException;
+    }
+}
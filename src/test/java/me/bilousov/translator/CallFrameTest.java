@@ -0,0 +1,174 @@
+package me.bilousov.translator;
+
+import me.bilousov.EmulatedProgram;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// the call, return and local initialization sequences, in every code mode
+class CallFrameTest {
+
+    private static final List<TranslatorOptions> MODES = List.of(TranslatorOptions.DEFAULT,
+            TranslatorOptions.DEFAULT.withCompactCode(true), TranslatorOptions.DEFAULT.withRegisterStackTop(true),
+            TranslatorOptions.DEFAULT.withCompactCode(true).withRegisterStackTop(true));
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void zeroesZeroOneAndManyLocals() throws IOException {
+        writeSys(
+                // leave values above the stack top where the locals of the callees will be
+                "push constant 11", "push constant 12", "push constant 13", "push constant 14", "push constant 15",
+                "push constant 16", "push constant 17", "push constant 18", "push constant 19", "push constant 20",
+                "pop temp 0", "pop temp 0", "pop temp 0", "pop temp 0", "pop temp 0",
+                "pop temp 0", "pop temp 0", "pop temp 0", "pop temp 0", "pop temp 0",
+                "call Main.none 0", "pop static 0",
+                "call Main.one 0", "pop static 1",
+                "call Main.many 0", "pop static 2");
+        Files.writeString(directory.resolve("Main.vm"), String.join("\n",
+                "function Main.none 0",
+                "push constant 3",
+                "return",
+                "function Main.one 1",
+                "push local 0",
+                "push constant 4",
+                "add",
+                "return",
+                // the first value pushed after the locals must land past the last one
+                "function Main.many 5",
+                "push constant 100",
+                "push local 0",
+                "push local 1",
+                "add",
+                "push local 2",
+                "add",
+                "push local 3",
+                "add",
+                "push local 4",
+                "add",
+                "add",
+                "return"));
+
+        for (TranslatorOptions options : MODES) {
+            EmulatedProgram program = EmulatedProgram.run(directory, options);
+
+            assertArrayEquals(new short[]{3, 4, 100}, program.statics(3), options.toString());
+            assertEquals(261, program.ram(0), options.toString());
+        }
+    }
+
+    @Test
+    void returnValueOfCallWithoutArgumentsReplacesTheReturnAddress() throws IOException {
+        writeSys(
+                "call Main.seven 0",
+                "call Main.seven 0",
+                "add",
+                "pop static 0",
+                "call Main.nested 0",
+                "pop static 1");
+        Files.writeString(directory.resolve("Main.vm"), String.join("\n",
+                "function Main.seven 0",
+                "push constant 7",
+                "return",
+                // the callee's return value is written where its own return address was
+                "function Main.nested 1",
+                "call Main.seven 0",
+                "pop local 0",
+                "call Main.seven 0",
+                "push local 0",
+                "sub",
+                "push constant 5",
+                "add",
+                "return"));
+
+        for (TranslatorOptions options : MODES) {
+            EmulatedProgram program = EmulatedProgram.run(directory, options);
+
+            assertArrayEquals(new short[]{14, 5}, program.statics(2), options.toString());
+            assertEquals(261, program.ram(0), options.toString());
+        }
+    }
+
+    @Test
+    void restoresTheSegmentsOfTheCaller() throws IOException {
+        writeSys(
+                "push constant 3000",
+                "pop pointer 0",
+                "push constant 4000",
+                "pop pointer 1",
+                "push constant 40",
+                "push constant 2",
+                "call Main.caller 2",
+                "pop static 0",
+                "push pointer 0",
+                "pop static 1",
+                "push pointer 1",
+                "pop static 2");
+        Files.writeString(directory.resolve("Main.vm"), String.join("\n",
+                "function Main.caller 2",
+                "push constant 8",
+                "pop local 0",
+                "push constant 9",
+                "pop local 1",
+                "push constant 1",
+                "pop this 0",
+                "push constant 6",
+                "pop that 0",
+                "push constant 5",
+                "call Main.clobber 1",
+                "pop temp 0",
+                // everything the caller can address is where it was before the call
+                "push argument 0",
+                "push argument 1",
+                "add",
+                "push local 0",
+                "add",
+                "push local 1",
+                "add",
+                "push this 0",
+                "add",
+                "push that 0",
+                "add",
+                "return",
+                "function Main.clobber 3",
+                "push constant 5000",
+                "pop pointer 0",
+                "push constant 6000",
+                "pop pointer 1",
+                "push argument 0",
+                "pop this 0",
+                "push argument 0",
+                "pop that 0",
+                "push constant 77",
+                "pop local 2",
+                "push constant 77",
+                "return"));
+
+        for (TranslatorOptions options : MODES) {
+            EmulatedProgram program = EmulatedProgram.run(directory, options);
+
+            assertArrayEquals(new short[]{66, 3000, 4000}, program.statics(3), options.toString());
+            assertEquals(5, program.ram(5000), options.toString());
+            assertEquals(261, program.ram(0), options.toString());
+            assertEquals(256, program.ram(2), options.toString());
+        }
+    }
+
+    private void writeSys(String... commands) throws IOException {
+        StringBuilder sys = new StringBuilder("function Sys.init 0\n");
+
+        for (String command : commands) {
+            sys.append(command).append('\n');
+        }
+
+        Files.writeString(directory.resolve("Sys.vm"), sys.append("label HALT\ngoto HALT\n").toString());
+    }
+}
@@ -0,0 +1,59 @@
+package me.bilousov.translator;
+
+import me.bilousov.EmulatedProgram;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompactCodeTest {
+
+    private static final TranslatorOptions COMPACT = TranslatorOptions.DEFAULT.withCompactCode(true);
+
+    @TempDir
+    Path directory;
+
+    @BeforeEach
+    void writeProgram() throws IOException {
+        EmulatedProgram.writeSample(directory);
+    }
+
+    @Test
+    void inlineCodeComputesSample() throws IOException {
+        assertSampleResults(EmulatedProgram.run(directory, TranslatorOptions.DEFAULT));
+    }
+
+    @Test
+    void sharedRoutinesComputeSample() throws IOException {
+        assertSampleResults(EmulatedProgram.run(directory, COMPACT));
+    }
+
+    @Test
+    void sharedRoutinesShrinkRom() throws IOException {
+        EmulatedProgram inline = EmulatedProgram.run(directory, TranslatorOptions.DEFAULT);
+        EmulatedProgram compact = EmulatedProgram.run(directory, COMPACT);
+
+        assertTrue(compact.getRomSize() < inline.getRomSize(), compact.getRomSize() + " >= " + inline.getRomSize());
+    }
+
+    @Test
+    void returnsRestoreTheCallersFrame() throws IOException {
+        EmulatedProgram compact = EmulatedProgram.run(directory, COMPACT);
+
+        // Sys.init popped the return value of Main.main, so the stack is back at its base
+        assertEquals(261, compact.ram(0));
+        assertEquals(0, compact.ram(5));
+    }
+
+    private static void assertSampleResults(EmulatedProgram program){
+        assertArrayEquals(EmulatedProgram.SAMPLE_STATICS, program.statics(EmulatedProgram.SAMPLE_STATICS.length));
+        assertEquals(11, program.ram(EmulatedProgram.SAMPLE_THIS + 2));
+        assertEquals(12, program.ram(EmulatedProgram.SAMPLE_THAT + 3));
+    }
+}
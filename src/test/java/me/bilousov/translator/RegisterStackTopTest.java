@@ -0,0 +1,81 @@
+package me.bilousov.translator;
+
+import me.bilousov.EmulatedProgram;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RegisterStackTopTest {
+
+    private static final TranslatorOptions REGISTER = TranslatorOptions.DEFAULT.withRegisterStackTop(true);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void computesSample() throws IOException {
+        EmulatedProgram.writeSample(directory);
+
+        assertSampleResults(EmulatedProgram.run(directory, REGISTER));
+        assertSampleResults(EmulatedProgram.run(directory, REGISTER.withCompactCode(true)));
+    }
+
+    @Test
+    void savesCyclesOnSample() throws IOException {
+        EmulatedProgram.writeSample(directory);
+
+        EmulatedProgram stack = EmulatedProgram.run(directory, TranslatorOptions.DEFAULT);
+        EmulatedProgram register = EmulatedProgram.run(directory, REGISTER);
+
+        assertTrue(register.getCycles() < stack.getCycles(), register.getCycles() + " >= " + stack.getCycles());
+    }
+
+    @Test
+    void spillsStackTopBeforeLabelsAndJumps() throws IOException {
+        Files.writeString(directory.resolve("Sys.vm"), String.join("\n",
+                "function Sys.init 1",
+                "push constant 10",
+                "pop local 0",
+                "label LOOP",
+                "push static 0",
+                "push local 0",
+                "add",
+                "pop static 0",
+                "push local 0",
+                "push constant 1",
+                "sub",
+                "pop local 0",
+                "push local 0",
+                "if-goto LOOP",
+                // the pushed value has to be in RAM when the code after the label reads it
+                "push constant 100",
+                "label JOIN",
+                "push constant 1",
+                "add",
+                "pop static 1",
+                "push constant 7",
+                "goto END",
+                "label END",
+                "pop static 2",
+                "label HALT",
+                "goto HALT"));
+
+        EmulatedProgram register = EmulatedProgram.run(directory, REGISTER);
+
+        assertArrayEquals(new short[]{55, 101, 7}, register.statics(3));
+        assertEquals(262, register.ram(0));
+    }
+
+    private static void assertSampleResults(EmulatedProgram program){
+        assertArrayEquals(EmulatedProgram.SAMPLE_STATICS, program.statics(EmulatedProgram.SAMPLE_STATICS.length));
+        assertEquals(11, program.ram(EmulatedProgram.SAMPLE_THIS + 2));
+        assertEquals(12, program.ram(EmulatedProgram.SAMPLE_THAT + 3));
+    }
+}
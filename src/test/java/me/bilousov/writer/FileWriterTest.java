@@ -0,0 +1,100 @@
+package me.bilousov.writer;
+
+import me.bilousov.translator.AssemblyBuffer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class FileWriterTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void writesDirectoryIntoItself() throws IOException {
+        Path program = Files.createDirectory(directory.resolve("Prog"));
+
+        assertEquals(program.resolve("Prog.asm"), FileWriter.getAssemblyOutputPath(program.toString()));
+        assertEquals(program.resolve("Prog.asm"), FileWriter.getAssemblyOutputPath(program + "/"));
+        assertEquals(program.resolve("Prog.hack"), FileWriter.getOutputPath(program.toString(), ".hack"));
+    }
+
+    @Test
+    void writesFileNextToIt() throws IOException {
+        Path vmFile = Files.writeString(directory.resolve("Main.vm"), "push constant 1");
+
+        assertEquals(directory.resolve("Main.asm"), FileWriter.getAssemblyOutputPath(vmFile.toString()));
+        assertEquals(directory.resolve("Main.bin"), FileWriter.getOutputPath(vmFile.toString(), ".bin"));
+        // a missing input is treated as a file
+        assertEquals(directory.resolve("Other.asm"), FileWriter.getAssemblyOutputPath(directory.resolve("Other.vm").toString()));
+    }
+
+    @Test
+    void resolvesRelativeInputAgainstTheWorkingDirectory(){
+        assertEquals(Path.of("Main.asm").toAbsolutePath(), FileWriter.getAssemblyOutputPath("Main.vm"));
+        assertEquals(Path.of("Main.asm").toAbsolutePath(), FileWriter.getAssemblyOutputPath("sub/../Main.vm"));
+    }
+
+    @Test
+    void createsNoFileWithTheSeparatorInItsName() throws IOException {
+        Path program = Files.createDirectory(directory.resolve("Prog"));
+
+        try (ChannelFileWriter writer = FileWriter.openChannelFile(program.toString(), 64, "\n")) {
+            writer.write("@SP");
+        }
+
+        assertEquals(List.of(program), list(directory));
+        assertEquals(List.of(program.resolve("Prog.asm")), list(program));
+    }
+
+    @Test
+    void mapsEveryLineBreakToTheSeparator() throws IOException {
+        Path output = directory.resolve("Out.asm");
+        AssemblyBuffer buffer = new AssemblyBuffer().append("(LOOP)\r\n@LOOP").append('\n').append("0;JMP");
+
+        // a buffer smaller than the output makes every write span flushes
+        try (ChannelFileWriter writer = new ChannelFileWriter(output, 4, "\r\n")) {
+            writer.write("@SP\nAM=M+1");
+            writer.write(buffer);
+            writer.write("");
+            writer.write("// caf\u00e9");
+
+            assertEquals(46, writer.getBytesWritten());
+        }
+
+        assertEquals("@SP\r\nAM=M+1\r\n(LOOP)\r\n@LOOP\r\n0;JMP\r\n\r\n// caf?\r\n",
+                Files.readString(output, StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    void channelAndStreamingWritersAgree() throws IOException {
+        Path channelOutput = directory.resolve("Channel.asm");
+        Path streamingOutput = directory.resolve("Streaming.asm");
+        String separator = System.getProperty("line.separator");
+        AssemblyBuffer buffer = new AssemblyBuffer().line("@SP").line("M=M+1").append("0;JMP");
+
+        try (ChannelFileWriter channel = new ChannelFileWriter(channelOutput, 16, separator);
+             StreamingFileWriter streaming = new StreamingFileWriter(streamingOutput.toString())) {
+            for (AssemblyFileWriter writer : List.of(channel, streaming)) {
+                writer.write("// bootstrap code");
+                writer.write(buffer);
+            }
+        }
+
+        assertEquals(Files.readString(streamingOutput), Files.readString(channelOutput));
+    }
+
+    private static List<Path> list(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.toList();
+        }
+    }
+}